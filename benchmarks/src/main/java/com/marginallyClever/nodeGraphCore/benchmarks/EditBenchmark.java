@@ -0,0 +1,65 @@
+package com.marginallyClever.nodeGraphCore.benchmarks;
+
+import com.marginallyClever.nodeGraphCore.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link NodeGraph} queries and edits made by the editor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class EditBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private NodeGraph graph;
+    private Node victim;
+    private final List<NodeConnection> victimConnections = new ArrayList<>();
+    private Point [] queries;
+    private int nextQuery;
+
+    @Setup
+    public void setup() {
+        graph = GraphGenerator.random(size,42);
+        victim = graph.getNodes().get(size/2);
+        for(NodeConnection c : graph.getConnections()) {
+            if(c.isConnectedTo(victim)) victimConnections.add(c);
+        }
+
+        // half the queries land on an input of a math node, half land nowhere in particular.
+        Random r = new Random(42);
+        queries = new Point[1024];
+        for(int i=0;i<queries.length;++i) {
+            Node n = graph.getNodes().get(1+r.nextInt(size-1));
+            if(i%2==0) queries[i] = n.getInPosition(r.nextInt(2));
+            else queries[i] = new Point(n.getRectangle().x-50,n.getRectangle().y-50);
+        }
+    }
+
+    /**
+     * Removes every connection to one {@link Node} and puts them back, so each invocation sees the same graph.
+     */
+    @Benchmark
+    public NodeGraph removeConnectionsToNode() {
+        graph.removeConnectionsToNode(victim);
+        for(NodeConnection c : victimConnections) graph.add(c);
+        return graph;
+    }
+
+    @Benchmark
+    public NodeConnectionPointInfo getFirstNearbyConnection() {
+        Point p = queries[nextQuery];
+        nextQuery = (nextQuery+1) % queries.length;
+        return graph.getFirstNearbyConnection(p,10);
+    }
+}
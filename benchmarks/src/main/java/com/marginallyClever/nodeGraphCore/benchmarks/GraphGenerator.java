@@ -0,0 +1,131 @@
+package com.marginallyClever.nodeGraphCore.benchmarks;
+
+import com.marginallyClever.nodeGraphCore.Node;
+import com.marginallyClever.nodeGraphCore.NodeConnection;
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import com.marginallyClever.nodeGraphCore.builtInNodes.LoadNumber;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.Add;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.Multiply;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.Subtract;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * Builds synthetic {@link NodeGraph}s for benchmarking.  The same arguments always build the same graph, with the
+ * same unique IDs and the same layout, so results can be compared between versions of the library.
+ * <p>The first {@link Node} of every graph is a {@link LoadNumber} that feeds the rest of the graph.  Every other
+ * {@link Node} has two inputs at index 0 and 1 and one output at index 2.</p>
+ */
+public class GraphGenerator {
+    public static final String CHAIN = "chain";
+    public static final String WIDE = "wide";
+    public static final String RANDOM = "random";
+
+    /**
+     * Space between {@link Node}s on the layout grid.
+     */
+    private static final int GRID_X = 200;
+    private static final int GRID_Y = 120;
+
+    /**
+     * @param shape one of {@link #CHAIN}, {@link #WIDE}, or {@link #RANDOM}.
+     * @param size the number of {@link Node}s.
+     * @param seed seed for {@link #RANDOM}.
+     * @return the new {@link NodeGraph}.
+     * @throws IllegalArgumentException if the shape is unknown.
+     */
+    public static NodeGraph create(String shape,int size,long seed) throws IllegalArgumentException {
+        switch(shape) {
+            case CHAIN:  return chain(size);
+            case WIDE:  return wide(size);
+            case RANDOM:  return random(size,seed);
+            default:  throw new IllegalArgumentException("unknown shape "+shape);
+        }
+    }
+
+    /**
+     * A source followed by one long line of {@link Add}s.  Every {@link Node} is in its own level.
+     * @param size the number of {@link Node}s.
+     * @return the new {@link NodeGraph}.
+     */
+    public static NodeGraph chain(int size) {
+        NodeGraph g = start();
+        Node previous = g.getNodes().get(0);
+        int previousOutput = 0;
+        for(int i=1;i<size;++i) {
+            Node n = g.add(new Add(0,1));
+            g.add(new NodeConnection(previous,previousOutput,n,0));
+            previous = n;
+            previousOutput = 2;
+        }
+        layout(g);
+        return g;
+    }
+
+    /**
+     * A source that feeds every other {@link Node} directly.  Every {@link Node} but the source is in the same level.
+     * @param size the number of {@link Node}s.
+     * @return the new {@link NodeGraph}.
+     */
+    public static NodeGraph wide(int size) {
+        NodeGraph g = start();
+        Node source = g.getNodes().get(0);
+        for(int i=1;i<size;++i) {
+            Node n = g.add(new Multiply(0,i));
+            g.add(new NodeConnection(source,0,n,0));
+        }
+        layout(g);
+        return g;
+    }
+
+    /**
+     * A random DAG.  Each new {@link Node} takes its two inputs from {@link Node}s added shortly before it, so the
+     * graph has both depth and breadth.
+     * @param size the number of {@link Node}s.
+     * @param seed the random seed.
+     * @return the new {@link NodeGraph}.
+     */
+    public static NodeGraph random(int size,long seed) {
+        Random r = new Random(seed);
+        NodeGraph g = start();
+        Node [] made = new Node[size];
+        made[0] = g.getNodes().get(0);
+        int window = 64;
+        for(int i=1;i<size;++i) {
+            Node n;
+            switch(r.nextInt(3)) {
+                case 0:  n = new Add();  break;
+                case 1:  n = new Subtract();  break;
+                default:  n = new Multiply();  break;
+            }
+            made[i] = g.add(n);
+            for(int input=0;input<2;++input) {
+                Node from = made[Math.max(0,i-1-r.nextInt(Math.min(i,window)))];
+                g.add(new NodeConnection(from,(from==made[0])?0:2,n,input));
+            }
+        }
+        layout(g);
+        return g;
+    }
+
+    private static NodeGraph start() {
+        NodeGraph g = new NodeGraph();
+        g.add(new LoadNumber(1));
+        return g;
+    }
+
+    /**
+     * Place the {@link Node}s on a square grid in the order they were added.
+     * @param g the {@link NodeGraph} to arrange.
+     */
+    public static void layout(NodeGraph g) {
+        int columns = (int)Math.ceil(Math.sqrt(g.getNodes().size()));
+        int i=0;
+        for(Node n : g.getNodes()) {
+            n.setPosition(new Point((i%columns)*GRID_X,(i/columns)*GRID_Y));
+            n.updateBounds();
+            i++;
+        }
+    }
+}
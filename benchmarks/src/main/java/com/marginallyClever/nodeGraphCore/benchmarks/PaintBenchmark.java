@@ -0,0 +1,59 @@
+package com.marginallyClever.nodeGraphCore.benchmarks;
+
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import com.marginallyClever.nodeGraphSwing.NodeGraphViewPanel;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link NodeGraphViewPanel} painting an entire graph into an offscreen image.  Runs headless.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class PaintBenchmark {
+    @Param({"1000", "10000"})
+    public int size;
+
+    private OffscreenView view;
+    private BufferedImage image;
+
+    /**
+     * Exposes {@link NodeGraphViewPanel#paintComponent(Graphics)} without needing a screen.
+     */
+    private static class OffscreenView extends NodeGraphViewPanel {
+        OffscreenView(NodeGraph model) {
+            super(model);
+        }
+
+        void paintTo(Graphics g) {
+            paintComponent(g);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        NodeGraph graph = GraphGenerator.random(size,42);
+        graph.update();
+        view = new OffscreenView(graph);
+        image = new BufferedImage(1920,1080,BufferedImage.TYPE_INT_ARGB);
+        view.setBounds(0,0,image.getWidth(),image.getHeight());
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent() {
+        Graphics2D g = image.createGraphics();
+        try {
+            view.paintTo(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
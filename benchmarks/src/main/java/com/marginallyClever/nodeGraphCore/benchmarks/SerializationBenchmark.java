@@ -0,0 +1,72 @@
+package com.marginallyClever.nodeGraphCore.benchmarks;
+
+import com.marginallyClever.nodeGraphCore.BinaryHelper;
+import com.marginallyClever.nodeGraphCore.BuiltInNodeRegistry;
+import com.marginallyClever.nodeGraphCore.GraphCopier;
+import com.marginallyClever.nodeGraphCore.JSONHelper;
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a copy through a json tree against {@link GraphCopier#copy(NodeGraph)}, and saving and loading with Gson through
+ * {@link com.marginallyClever.nodeGraphCore.json.NodeGraphJsonAdapter}, and the same with {@link BinaryHelper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SerializationBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private NodeGraph graph;
+    private String json;
+    private byte [] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        BuiltInNodeRegistry.registerNodes();
+        graph = GraphGenerator.random(size,42);
+        json = JSONHelper.getDefaultGson().toJson(graph);
+        binary = saveBinary();
+    }
+
+    @Benchmark
+    public NodeGraph jsonCopy() {
+        return JSONHelper.getDefaultGson().fromJson(JSONHelper.getDefaultGson().toJsonTree(graph),NodeGraph.class);
+    }
+
+    @Benchmark
+    public NodeGraph structuralCopy() {
+        return GraphCopier.copy(graph);
+    }
+
+    @Benchmark
+    public String save() {
+        return JSONHelper.getDefaultGson().toJson(graph);
+    }
+
+    @Benchmark
+    public NodeGraph load() {
+        return JSONHelper.getDefaultGson().fromJson(json,NodeGraph.class);
+    }
+
+    @Benchmark
+    public byte [] saveBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryHelper.saveGraph(graph,out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public NodeGraph loadBinary() throws IOException {
+        return BinaryHelper.loadGraph(new ByteArrayInputStream(binary));
+    }
+}
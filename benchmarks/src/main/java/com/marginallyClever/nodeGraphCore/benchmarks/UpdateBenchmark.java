@@ -0,0 +1,49 @@
+package com.marginallyClever.nodeGraphCore.benchmarks;
+
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import com.marginallyClever.nodeGraphCore.NodeVariable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link NodeGraph#update()} after the source of the graph changes, which makes every {@link
+ * com.marginallyClever.nodeGraphCore.Node} run, and when nothing has changed at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class UpdateBenchmark {
+    @Param({GraphGenerator.CHAIN, GraphGenerator.WIDE, GraphGenerator.RANDOM})
+    public String shape;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private NodeGraph graph;
+    private NodeVariable<?> source;
+    private double value;
+
+    @Setup
+    public void setup() {
+        graph = GraphGenerator.create(shape,size,42);
+        source = graph.getNodes().get(0).getVariable(0);
+        graph.update();
+    }
+
+    @Benchmark
+    public NodeGraph updateAfterChange() {
+        source.setValue(++value);
+        graph.update();
+        return graph;
+    }
+
+    @Benchmark
+    public NodeGraph updateIdle() {
+        graph.update();
+        return graph;
+    }
+}
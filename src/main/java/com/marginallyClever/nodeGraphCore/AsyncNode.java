@@ -0,0 +1,21 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Node}s with this interface do their slow work (disk, network) off the graph's thread.  Instead of
+ * {@link Node#update()}, {@link NodeGraph#update()} calls {@link #updateAsync(Executor)} and moves on.  When the
+ * future completes, the next {@link NodeGraph#update()} runs the {@link Runnable} it produced on the graph's thread,
+ * which sets the outputs, and then updates everything downstream.
+ * <p>{@link #updateAsync(Executor)} is called on the graph's thread, so it may read inputs and clean them.  The work
+ * submitted to the executor must not touch any {@link NodeVariable}.</p>
+ */
+public interface AsyncNode {
+    /**
+     * Start an update.
+     * @param executor where to run the slow work.
+     * @return a future that completes with the code that publishes the results.
+     */
+    CompletableFuture<Runnable> updateAsync(Executor executor);
+}
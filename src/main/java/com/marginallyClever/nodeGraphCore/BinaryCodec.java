@@ -0,0 +1,27 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * {@link BinaryCodec} writes and reads one type of {@link NodeVariable} value for {@link BinaryHelper}.  Register a
+ * codec with {@link BinaryHelper#registerCodec(Class, String, BinaryCodec)} to save a type more compactly than its
+ * json form.
+ * @param <T> the type of value.
+ */
+public interface BinaryCodec<T> {
+    /**
+     * @param out where to write.
+     * @param value the value to write.  Never null.
+     * @throws IOException if the output fails.
+     */
+    void write(DataOutput out, T value) throws IOException;
+
+    /**
+     * @param in where to read from.  Only the bytes written by {@link #write(DataOutput, Object)} are available.
+     * @return the value.
+     * @throws IOException if the input fails.
+     */
+    T read(DataInput in) throws IOException;
+}
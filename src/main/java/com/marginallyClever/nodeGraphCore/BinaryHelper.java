@@ -0,0 +1,485 @@
+package com.marginallyClever.nodeGraphCore;
+
+import com.google.gson.Gson;
+import com.marginallyClever.nodeGraphCore.jfr.GraphLoadEvent;
+import com.marginallyClever.nodeGraphCore.jfr.GraphSaveEvent;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Saves and loads a {@link NodeGraph} in a compact binary form.  It holds the same information as the json form made
+ * by {@link JSONHelper}, so a graph can go from one form to the other and back without loss.
+ * <p>The file starts with {@link #MAGIC} and a table of every type name, variable name, label and codec name in the
+ * graph.  Everything after that refers to the table by number.  Numbers are written as variable length integers, so
+ * small numbers take one byte.  Each {@link Node} is one record that starts with its length, which lets a reader skip
+ * over a {@link Node} without reading it.  {@link NodeConnection}s refer to {@link Node}s by their position in the
+ * file and are written in blocks of {@link #CONNECTIONS_PER_BLOCK}.</p>
+ * <p>{@link NodeVariable} values are written by the {@link BinaryCodec} registered for the class of the value.  Values
+ * with no codec are written as their json.</p>
+ */
+public class BinaryHelper {
+    /**
+     * The first bytes of every binary graph: "NGB" and the format version.
+     */
+    public static final byte [] MAGIC = { 'N','G','B',1 };
+
+    /**
+     * The most {@link NodeConnection}s in one block.
+     */
+    static final int CONNECTIONS_PER_BLOCK = 1024;
+
+    /**
+     * The most bytes in one variable length int.
+     */
+    static final int MAX_VARINT_BYTES = 5;
+
+    static final int FLAG_HAS_INPUT = 1;
+    static final int FLAG_HAS_OUTPUT = 2;
+    static final int FLAG_IS_DIRTY = 4;
+
+    /**
+     * Name of the codec used for values with no registered {@link BinaryCodec}.
+     */
+    static final String JSON_CODEC = "json";
+
+    private static class CodecEntry {
+        final String name;
+        final BinaryCodec<Object> codec;
+
+        @SuppressWarnings("unchecked")
+        CodecEntry(String name, BinaryCodec<?> codec) {
+            this.name = name;
+            this.codec = (BinaryCodec<Object>)codec;
+        }
+    }
+
+    private static final Map<Class<?>,CodecEntry> codecsByClass = new HashMap<>();
+    private static final Map<String,CodecEntry> codecsByName = new HashMap<>();
+
+    static {
+        registerCodec(Double.class,"double",new BinaryCodec<>() {
+            @Override public void write(DataOutput out, Double value) throws IOException { out.writeDouble(value); }
+            @Override public Double read(DataInput in) throws IOException { return in.readDouble(); }
+        });
+        registerCodec(Long.class,"long",new BinaryCodec<>() {
+            @Override public void write(DataOutput out, Long value) throws IOException { out.writeLong(value); }
+            @Override public Long read(DataInput in) throws IOException { return in.readLong(); }
+        });
+        registerCodec(Integer.class,"int",new BinaryCodec<>() {
+            @Override public void write(DataOutput out, Integer value) throws IOException { out.writeInt(value); }
+            @Override public Integer read(DataInput in) throws IOException { return in.readInt(); }
+        });
+        registerCodec(Boolean.class,"boolean",new BinaryCodec<>() {
+            @Override public void write(DataOutput out, Boolean value) throws IOException { out.writeBoolean(value); }
+            @Override public Boolean read(DataInput in) throws IOException { return in.readBoolean(); }
+        });
+        registerCodec(String.class,"string",new BinaryCodec<>() {
+            @Override public void write(DataOutput out, String value) throws IOException {
+                byte [] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            @Override public String read(DataInput in) throws IOException {
+                byte [] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes,StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    /**
+     * Use a {@link BinaryCodec} for every value of exactly this class.  Does not allow a class or a name to be
+     * registered more than once.
+     * @param type the class of value.
+     * @param name the name saved in the file.  Must not change between versions or old files will not load.
+     * @param codec the {@link BinaryCodec}.
+     * @param <T> the class of value.
+     * @throws IllegalArgumentException if the class or name is already registered, or the name is reserved.
+     */
+    public static <T> void registerCodec(Class<T> type, String name, BinaryCodec<T> codec) throws IllegalArgumentException {
+        if(codecsByClass.containsKey(type)) throw new IllegalArgumentException("Codec already registered for "+type.getName());
+        if(codecsByName.containsKey(name) || JSON_CODEC.equals(name)) throw new IllegalArgumentException("Codec name already in use: "+name);
+        CodecEntry entry = new CodecEntry(name,codec);
+        codecsByClass.put(type,entry);
+        codecsByName.put(name,entry);
+    }
+
+    /**
+     * @param in a stream that supports {@link InputStream#mark(int)}.  The stream is reset afterwards.
+     * @return true if the stream starts with {@link #MAGIC}.
+     * @throws IOException if the stream fails.
+     */
+    public static boolean isBinaryGraph(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        byte [] head = in.readNBytes(MAGIC.length);
+        in.reset();
+        return Arrays.equals(head,MAGIC);
+    }
+
+    /**
+     * Writes a {@link NodeGraph} to a stream.  Wrap file streams in a {@link BufferedOutputStream}.
+     * @param graph the {@link NodeGraph} to write.
+     * @param stream where to write it.  The stream is flushed but not closed.
+     * @throws IOException if the stream fails.
+     */
+    public static void saveGraph(NodeGraph graph, OutputStream stream) throws IOException {
+        GraphSaveEvent event = new GraphSaveEvent();
+        event.begin();
+
+        new GraphWriter(graph).write(stream);
+
+        if(event.shouldCommit()) {
+            event.setGraph(graph);
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads a {@link NodeGraph} from a stream.  One {@link Node} at a time is held in memory as bytes.
+     * @param stream where to read from.  The stream is not closed.
+     * @return the {@link NodeGraph}.
+     * @throws IOException if the stream fails or is not a binary graph.
+     * @throws IllegalArgumentException if the graph contains a {@link Node} type that is not registered with
+     * {@link NodeFactory}.
+     */
+    public static NodeGraph loadGraph(InputStream stream) throws IOException {
+        GraphLoadEvent event = new GraphLoadEvent();
+        event.begin();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream,1<<16));
+        String [] strings = readHeader(in);
+        GraphReader reader = new GraphReader(strings);
+        ByteBuffer record = ByteBuffer.allocate(256);
+
+        NodeGraph graph = new NodeGraph();
+        int nodeCount = readVarInt(in);
+        Node [] nodes = new Node[nodeCount];
+        for(int i=0;i<nodeCount;++i) {
+            record = readRecord(in,record);
+            nodes[i] = reader.readNode(record);
+        }
+        for(Node n : nodes) graph.add(n);
+
+        int remaining = readVarInt(in);
+        List<NodeConnection> connections = new ArrayList<>(remaining);
+        while(remaining>0) {
+            record = readRecord(in,record);
+            int count = Math.min(remaining,CONNECTIONS_PER_BLOCK);
+            reader.readConnections(record,count,nodes,connections);
+            remaining -= count;
+        }
+        graph.addAll(connections);
+
+        if(event.shouldCommit()) {
+            event.setGraph(graph);
+            event.commit();
+        }
+        return graph;
+    }
+
+    /**
+     * Read {@link #MAGIC} and the string table.
+     * @param in the stream, positioned at the start of the file.
+     * @return the string table.
+     * @throws IOException if the stream fails or is not a binary graph.
+     */
+    static String[] readHeader(DataInput in) throws IOException {
+        byte [] head = new byte[MAGIC.length];
+        in.readFully(head);
+        if(!Arrays.equals(head,MAGIC)) throw new IOException("Not a binary graph.");
+
+        String [] strings = new String[readVarInt(in)];
+        for(int i=0;i<strings.length;++i) {
+            byte [] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes,StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Read one length prefixed record into a buffer, growing the buffer if needed.
+     * @return the buffer, flipped and ready to read.
+     */
+    private static ByteBuffer readRecord(DataInputStream in, ByteBuffer buffer) throws IOException {
+        int length = readVarInt(in);
+        if(buffer.capacity()<length) buffer = ByteBuffer.allocate(Math.max(length,buffer.capacity()*2));
+        buffer.clear();
+        in.readFully(buffer.array(),0,length);
+        buffer.limit(length);
+        return buffer;
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int result = 0;
+        for(int shift=0;shift<MAX_VARINT_BYTES*7;shift+=7) {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if(b>=0) return result;
+        }
+        throw new IOException("varint too long");
+    }
+
+    static void writeVarInt(DataOutput out, int v) throws IOException {
+        while((v & ~0x7F)!=0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static void writeZigZagInt(DataOutput out, int v) throws IOException {
+        writeVarInt(out,(v << 1) ^ (v >> 31));
+    }
+
+    /**
+     * The same bytes as {@link #writeZigZagInt(DataOutput, int)} for any value that fits in an int.
+     */
+    static void writeZigZagLong(DataOutput out, long v) throws IOException {
+        long n = (v << 1) ^ (v >> 63);
+        while((n & ~0x7FL)!=0) {
+            out.writeByte((int)(n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte((int)n);
+    }
+
+    private static void writeRectangle(DataOutput out, Rectangle r) throws IOException {
+        writeZigZagInt(out,r.x);
+        writeZigZagInt(out,r.y);
+        writeZigZagInt(out,r.width);
+        writeZigZagInt(out,r.height);
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} that can be reused and written as one length prefixed record.
+     */
+    private static class Record extends ByteArrayOutputStream {
+        final DataOutputStream data = new DataOutputStream(this);
+
+        void writeTo(DataOutputStream out) throws IOException {
+            writeVarInt(out,count);
+            out.write(buf,0,count);
+            reset();
+        }
+    }
+
+    /**
+     * Writes one {@link NodeGraph}.
+     */
+    private static class GraphWriter {
+        private final NodeGraph graph;
+        private final Map<String,Integer> stringIndex = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<Node,Integer> nodeIndex = new IdentityHashMap<>();
+        private final Record record = new Record();
+        private final Record value = new Record();
+
+        GraphWriter(NodeGraph graph) {
+            this.graph = graph;
+        }
+
+        void write(OutputStream stream) throws IOException {
+            List<Node> nodes = graph.getNodes();
+            for(Node n : nodes) {
+                nodeIndex.put(n,nodeIndex.size());
+                addString(n.getName());
+                if(n.getLabel()!=null) addString(n.getLabel());
+                for(NodeVariable<?> v : n.getVariables()) {
+                    addString(v.getName());
+                    if(v.getValue()!=null) addString(getCodecName(v));
+                }
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream,1<<16));
+            out.write(MAGIC);
+            writeVarInt(out,strings.size());
+            for(String s : strings) {
+                byte [] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out,bytes.length);
+                out.write(bytes);
+            }
+
+            writeVarInt(out,nodes.size());
+            for(Node n : nodes) {
+                writeNode(record.data,n);
+                record.writeTo(out);
+            }
+
+            List<NodeConnection> connections = graph.getConnections();
+            writeVarInt(out,connections.size());
+            for(int i=0;i<connections.size();++i) {
+                NodeConnection c = connections.get(i);
+                writeEnd(record.data,c.getInNode(),c.getInVariableIndex());
+                writeEnd(record.data,c.getOutNode(),c.getOutVariableIndex());
+                if((i+1)%CONNECTIONS_PER_BLOCK==0 || i+1==connections.size()) record.writeTo(out);
+            }
+            out.flush();
+        }
+
+        private void addString(String s) {
+            if(!stringIndex.containsKey(s)) {
+                stringIndex.put(s,strings.size());
+                strings.add(s);
+            }
+        }
+
+        private void writeNode(DataOutputStream out, Node n) throws IOException {
+            writeVarInt(out,stringIndex.get(n.getName()));
+            writeZigZagLong(out,n.getUniqueID());
+            writeVarInt(out,n.getLabel()==null ? 0 : stringIndex.get(n.getLabel())+1);
+            writeRectangle(out,n.getRectangle());
+            writeVarInt(out,n.getNumVariables());
+            for(NodeVariable<?> v : n.getVariables()) {
+                writeVarInt(out,stringIndex.get(v.getName()));
+                int flags = 0;
+                if(v.getHasInput()) flags |= FLAG_HAS_INPUT;
+                if(v.getHasOutput()) flags |= FLAG_HAS_OUTPUT;
+                if(v.getIsDirty()) flags |= FLAG_IS_DIRTY;
+                out.writeByte(flags);
+                writeRectangle(out,v.getRectangle());
+
+                Object o = v.getValue();
+                if(o==null) {
+                    writeVarInt(out,0);
+                } else {
+                    String codecName = getCodecName(v);
+                    writeVarInt(out,stringIndex.get(codecName)+1);
+                    if(codecName.equals(JSON_CODEC)) {
+                        value.write(toJson(v).getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        codecsByName.get(codecName).codec.write(value.data,o);
+                    }
+                    value.writeTo(out);
+                }
+            }
+        }
+
+        private void writeEnd(DataOutputStream out, Node n, int variableIndex) throws IOException {
+            Integer index = (n==null) ? null : nodeIndex.get(n);
+            if(index==null) {
+                writeVarInt(out,0);
+            } else {
+                writeVarInt(out,index+1);
+                writeVarInt(out,variableIndex);
+            }
+        }
+
+        private String getCodecName(NodeVariable<?> v) {
+            CodecEntry entry = codecsByClass.get(v.getValue().getClass());
+            return (entry==null) ? JSON_CODEC : entry.name;
+        }
+
+        private <T> String toJson(NodeVariable<T> v) {
+            return JSONHelper.getDefaultGson().toJson(v.getValue(),v.getTypeClass());
+        }
+    }
+
+    /**
+     * Reads the records of one binary graph.
+     */
+    static class GraphReader {
+        private final String [] strings;
+        private final ByteBufferInput input = new ByteBufferInput(null);
+
+        GraphReader(String [] strings) {
+            this.strings = strings;
+        }
+
+        /**
+         * @param record one {@link Node} record, positioned at its start.
+         * @return the new {@link Node}.
+         * @throws IllegalArgumentException if the type of {@link Node} is not registered with {@link NodeFactory}.
+         */
+        Node readNode(ByteBuffer record) throws IOException {
+            input.setBuffer(record);
+            Node n = NodeFactory.createNode(strings[input.readVarInt()]);
+            n.setUniqueID(input.readZigZagLong());
+            int label = input.readVarInt();
+            if(label>0) n.setLabel(strings[label-1]);
+            n.setRectangle(readRectangle());
+
+            int count = input.readVarInt();
+            for(int i=0;i<count;++i) {
+                String name = strings[input.readVarInt()];
+                int flags = input.readUnsignedByte();
+                Rectangle bounds = readRectangle();
+                NodeVariable<?> v = findVariable(n,i,name);
+                int codec = input.readVarInt();
+                if(codec>0) {
+                    int length = input.readVarInt();
+                    int end = record.position()+length;
+                    if(v!=null) {
+                        int limit = record.limit();
+                        record.limit(end);
+                        v.setValue(readValue(v,strings[codec-1],record));
+                        record.limit(limit);
+                    }
+                    record.position(end);
+                } else if(v!=null) {
+                    v.setValue(null);
+                }
+                if(v==null) continue;
+                v.name = name;
+                v.hasInput = (flags & FLAG_HAS_INPUT)!=0;
+                v.hasOutput = (flags & FLAG_HAS_OUTPUT)!=0;
+                v.rectangle.setBounds(bounds);
+                v.isDirty = (flags & FLAG_IS_DIRTY)!=0;
+            }
+            return n;
+        }
+
+        /**
+         * @param record one block of {@link NodeConnection}s, positioned at its start.
+         * @param count the number of {@link NodeConnection}s in the block.
+         * @param nodes every {@link Node} of the graph, in file order.
+         * @param list where to put the {@link NodeConnection}s.
+         */
+        void readConnections(ByteBuffer record,int count,Node [] nodes,List<NodeConnection> list) throws IOException {
+            input.setBuffer(record);
+            for(int i=0;i<count;++i) {
+                int inNode = input.readVarInt();
+                int inIndex = (inNode>0) ? input.readVarInt() : 0;
+                int outNode = input.readVarInt();
+                int outIndex = (outNode>0) ? input.readVarInt() : 0;
+                list.add(JSONHelper.createNodeConnection(
+                        inNode>0 ? nodes[inNode-1] : null, inIndex,
+                        outNode>0 ? nodes[outNode-1] : null, outIndex));
+            }
+        }
+
+        private Rectangle readRectangle() throws IOException {
+            return new Rectangle(input.readZigZagInt(),input.readZigZagInt(),input.readZigZagInt(),input.readZigZagInt());
+        }
+
+        private NodeVariable<?> findVariable(Node n,int i,String name) {
+            // variables are almost always in the same order they were saved.
+            if(i<n.getNumVariables() && n.getVariable(i).getName().equals(name)) return n.getVariable(i);
+            for(NodeVariable<?> v : n.getVariables()) {
+                if(v.getName().equals(name)) return v;
+            }
+            return null;
+        }
+
+        private Object readValue(NodeVariable<?> v,String codecName,ByteBuffer record) throws IOException {
+            if(codecName.equals(JSON_CODEC)) {
+                byte [] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                return fromJson(new String(bytes,StandardCharsets.UTF_8),v.getTypeClass());
+            }
+            CodecEntry entry = codecsByName.get(codecName);
+            if(entry==null) throw new IOException("No codec named "+codecName);
+            return entry.codec.read(input);
+        }
+
+        private static Object fromJson(String json,Class<?> type) {
+            Gson gson = JSONHelper.getDefaultGson();
+            return gson.fromJson(json,type);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * A {@link NodeVariable} for {@link Boolean}s that stores a primitive {@code boolean}.  {@link #getBoolean()} and
+ * {@link #setBoolean(boolean)} never allocate, and a {@link NodeConnection} between two of these variables moves the
+ * value without boxing.
+ */
+public class BooleanNodeVariable extends NodeVariable<Boolean> {
+    private boolean primitive;
+
+    protected BooleanNodeVariable(String name,boolean defaultValue,boolean hasInput,boolean hasOutput) {
+        super(name,Boolean.class,null,hasInput,hasOutput);
+        primitive = defaultValue;
+    }
+
+    @Override
+    public NodeVariable<Boolean> createInverse() {
+        return new BooleanNodeVariable(name,primitive,!hasInput,!hasOutput);
+    }
+
+    /**
+     * @return the value as a {@link Boolean}.  Both possible boxes are cached by the JVM.
+     */
+    @Override
+    public Boolean getValue() {
+        return primitive;
+    }
+
+    @Override
+    public void setValue(Object arg0) {
+        if(isValidType(arg0)) setBoolean((Boolean)arg0);
+    }
+
+    @Override
+    public boolean acceptsValueOf(NodeVariable<?> source) {
+        if(source instanceof BooleanNodeVariable) return true;
+        return super.acceptsValueOf(source);
+    }
+
+    @Override
+    public void setValueFrom(NodeVariable<?> source) {
+        if(source instanceof BooleanNodeVariable) setBoolean(source.getBoolean());
+        else super.setValueFrom(source);
+    }
+
+    @Override
+    public boolean hasSameValueAs(NodeVariable<?> source) {
+        if(source instanceof BooleanNodeVariable) return primitive==source.getBoolean();
+        return super.hasSameValueAs(source);
+    }
+
+    @Override
+    public boolean getBoolean() {
+        return primitive;
+    }
+
+    @Override
+    public void setBoolean(boolean v) {
+        primitive = v;
+        setIsDirty(true);
+    }
+}
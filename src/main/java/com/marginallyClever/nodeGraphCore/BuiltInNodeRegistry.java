@@ -1,32 +1,36 @@
 package com.marginallyClever.nodeGraphCore;
 
-import com.marginallyClever.nodeGraphCore.builtInNodes.LoadNumber;
-import com.marginallyClever.nodeGraphCore.builtInNodes.LoadString;
-import com.marginallyClever.nodeGraphCore.builtInNodes.PrintToStdOut;
-import com.marginallyClever.nodeGraphCore.builtInNodes.math.*;
-
 /**
- *
+ * Registers the built-in {@link Node}s with the {@link NodeFactory}.  {@link NodeFactory} finds this registry on its
+ * own, so calling {@link #registerNodes()} is no longer needed.
  */
-public class BuiltInNodeRegistry {
+public class BuiltInNodeRegistry implements NodeRegistry {
+    private static final String PACKAGE = "com.marginallyClever.nodeGraphCore.builtInNodes.";
+
     /**
      * Call this once to register all the built-in nodes that are included in the package.
      */
     public static void registerNodes() {
-        NodeFactory.registerNode(new LoadNumber());
-        NodeFactory.registerNode(new Random());
-        NodeFactory.registerNode(new Add());
-        NodeFactory.registerNode(new Subtract());
-        NodeFactory.registerNode(new Multiply());
-        NodeFactory.registerNode(new Divide());
-        NodeFactory.registerNode(new PrintToStdOut());
-        NodeFactory.registerNode(new Cos());
-        NodeFactory.registerNode(new Sin());
-        NodeFactory.registerNode(new Tan());
-        NodeFactory.registerNode(new ATan2());
-        NodeFactory.registerNode(new Min());
-        NodeFactory.registerNode(new Max());
+        ClassLoader loader = BuiltInNodeRegistry.class.getClassLoader();
+        NodeFactory.registerNode("LoadNumber",PACKAGE+"LoadNumber",loader);
+        NodeFactory.registerNode("Random",PACKAGE+"math.Random",loader);
+        NodeFactory.registerNode("Add",PACKAGE+"math.Add",loader);
+        NodeFactory.registerNode("Subtract",PACKAGE+"math.Subtract",loader);
+        NodeFactory.registerNode("Multiply",PACKAGE+"math.Multiply",loader);
+        NodeFactory.registerNode("Divide",PACKAGE+"math.Divide",loader);
+        NodeFactory.registerNode("PrintToStdOut",PACKAGE+"PrintToStdOut",loader);
+        NodeFactory.registerNode("Cos",PACKAGE+"math.Cos",loader);
+        NodeFactory.registerNode("Sin",PACKAGE+"math.Sin",loader);
+        NodeFactory.registerNode("Tan",PACKAGE+"math.Tan",loader);
+        NodeFactory.registerNode("ATan2",PACKAGE+"math.ATan2",loader);
+        NodeFactory.registerNode("Min",PACKAGE+"math.Min",loader);
+        NodeFactory.registerNode("Max",PACKAGE+"math.Max",loader);
+
+        NodeFactory.registerNode("LoadString",PACKAGE+"LoadString",loader);
+    }
 
-        NodeFactory.registerNode(new LoadString());
+    @Override
+    public void register() {
+        registerNodes();
     }
 }
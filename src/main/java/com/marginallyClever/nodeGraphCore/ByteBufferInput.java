@@ -0,0 +1,153 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DataInput} over a {@link ByteBuffer}.  Unlike a {@link DataInputStream} nothing here takes a lock, so
+ * reading one byte at a time is cheap.  Also reads the variable length integers written by {@link BinaryHelper}.
+ */
+class ByteBufferInput implements DataInput {
+    private ByteBuffer buffer;
+
+    ByteBufferInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return an unsigned variable length int.
+     * @throws IOException if the buffer runs out or the int is too long.
+     */
+    int readVarInt() throws IOException {
+        int result = 0;
+        for(int shift=0;shift<35;shift+=7) {
+            byte b = readByte();
+            result |= (b & 0x7F) << shift;
+            if(b>=0) return result;
+        }
+        throw new IOException("varint too long");
+    }
+
+    /**
+     * @return a signed variable length int.
+     * @throws IOException if the buffer runs out or the int is too long.
+     */
+    int readZigZagInt() throws IOException {
+        int n = readVarInt();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * @return a signed variable length long.
+     * @throws IOException if the buffer runs out or the long is too long.
+     */
+    long readZigZagLong() throws IOException {
+        long result = 0;
+        for(int shift=0;shift<70;shift+=7) {
+            byte b = readByte();
+            result |= (long)(b & 0x7F) << shift;
+            if(b>=0) return (result >>> 1) ^ -(result & 1);
+        }
+        throw new IOException("varlong too long");
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b,0,b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if(buffer.remaining()<len) throw new EOFException();
+        buffer.get(b,off,len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        int skip = Math.max(0,Math.min(n,buffer.remaining()));
+        buffer.position(buffer.position()+skip);
+        return skip;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte()!=0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch(BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        if(buffer.remaining()<Short.BYTES) throw new EOFException();
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        if(buffer.remaining()<Character.BYTES) throw new EOFException();
+        return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        if(buffer.remaining()<Integer.BYTES) throw new EOFException();
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        if(buffer.remaining()<Long.BYTES) throw new EOFException();
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        if(buffer.remaining()<Float.BYTES) throw new EOFException();
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        if(buffer.remaining()<Double.BYTES) throw new EOFException();
+        return buffer.getDouble();
+    }
+
+    @Override
+    public String readLine() {
+        throw new UnsupportedOperationException("readLine");
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
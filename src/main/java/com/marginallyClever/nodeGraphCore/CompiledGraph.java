@@ -0,0 +1,284 @@
+package com.marginallyClever.nodeGraphCore;
+
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.*;
+
+import java.util.*;
+
+/**
+ * {@link CompiledGraph} is an {@link ExecutionPlan} made only of {@link PureNode}s, flattened into one straight-line
+ * program over an array of {@code double} registers.  Running the program does not call {@link Node#update()}, check
+ * dirty flags, or apply {@link NodeConnection}s one at a time.  It reads every source once, computes every output,
+ * then writes the results back to the {@link NodeVariable}s so the graph looks exactly as if it had been interpreted.
+ * <p>Each instruction is four ints: opcode, destination register, and two source registers.  Sources are the
+ * unconnected inputs of each {@link Node} and the outputs of {@link PureNode}s that have no inputs, such as
+ * {@link com.marginallyClever.nodeGraphCore.builtInNodes.LoadNumber}.</p>
+ */
+class CompiledGraph {
+    static final int ADD = 0;
+    static final int SUBTRACT = 1;
+    static final int MULTIPLY = 2;
+    static final int DIVIDE = 3;
+    static final int MIN = 4;
+    static final int MAX = 5;
+    static final int SIN = 6;
+    static final int COS = 7;
+    static final int TAN = 8;
+    static final int ATAN2 = 9;
+
+    /**
+     * The opcode for each {@link PureNode} class that can be compiled.  Matched by exact class so that subclasses
+     * which override {@link Node#update()} are never compiled by mistake.
+     */
+    private static final Map<Class<? extends Node>,Integer> OPCODES = new HashMap<>();
+
+    static {
+        OPCODES.put(Add.class,ADD);
+        OPCODES.put(Subtract.class,SUBTRACT);
+        OPCODES.put(Multiply.class,MULTIPLY);
+        OPCODES.put(Divide.class,DIVIDE);
+        OPCODES.put(Min.class,MIN);
+        OPCODES.put(Max.class,MAX);
+        OPCODES.put(Sin.class,SIN);
+        OPCODES.put(Cos.class,COS);
+        OPCODES.put(Tan.class,TAN);
+        OPCODES.put(ATan2.class,ATAN2);
+    }
+
+    final double[] registers;
+
+    /**
+     * {@code code[pc]} is the opcode, {@code code[pc+1]} the destination, {@code code[pc+2]} and {@code code[pc+3]}
+     * the operands.  Unary operations repeat the first operand.
+     */
+    final int[] code;
+
+    /**
+     * {@code registers[loadRegister[i]]} is read from {@code loads[i]} at the start of every run.
+     */
+    final NodeVariable<?>[] loads;
+    final int[] loadRegister;
+
+    /**
+     * {@code stores[i]} is set to {@code registers[storeRegister[i]]} at the end of every run.
+     */
+    private final NodeVariable<?>[] stores;
+    private final int[] storeRegister;
+
+    private final Node[] nodes;
+
+    /**
+     * {@code nodes[loadNode[i]]} owns {@code loads[i]}, and {@code nodes[opNode[k]]} is computed by instruction k.
+     * Used to measure each {@link Node}.
+     */
+    private final int[] loadNode, opNode;
+
+    /**
+     * The {@link NodeConnection}s carried by the program.  Each run sends a value across every one of them.
+     */
+    private final NodeConnection[] transfers;
+
+    /**
+     * The register that holds the value of each compiled {@link NodeVariable}.
+     */
+    final Map<NodeVariable<?>,Integer> registerOf;
+
+    private CompiledGraph(Node[] nodes,Map<NodeVariable<?>,Integer> registerOf,int registerCount,int[] code,
+                          List<NodeVariable<?>> loads,List<Integer> loadRegister,
+                          List<NodeVariable<?>> stores,List<Integer> storeRegister,
+                          List<Integer> loadNode,List<Integer> opNode,List<NodeConnection> transfers) {
+        this.nodes = nodes;
+        this.registerOf = registerOf;
+        this.registers = new double[registerCount];
+        this.code = code;
+        this.loads = loads.toArray(new NodeVariable<?>[0]);
+        this.loadRegister = loadRegister.stream().mapToInt(Integer::intValue).toArray();
+        this.stores = stores.toArray(new NodeVariable<?>[0]);
+        this.storeRegister = storeRegister.stream().mapToInt(Integer::intValue).toArray();
+        this.loadNode = loadNode.stream().mapToInt(Integer::intValue).toArray();
+        this.opNode = opNode.stream().mapToInt(Integer::intValue).toArray();
+        this.transfers = transfers.toArray(new NodeConnection[0]);
+    }
+
+    /**
+     * @param plan the {@link ExecutionPlan} to compile.
+     * @return the compiled program, or null if any {@link Node} in the plan cannot be compiled, a source
+     * {@link Node} is not a {@link SupergraphInput} or has an output that is not a {@link Number}, the plan has a
+     * feedback loop, or a {@link NodeConnection} leaves the graph.
+     */
+    static CompiledGraph compile(ExecutionPlan plan) {
+        if(plan.hasLoops() || plan.unordered.length>0) return null;
+
+        Map<NodeVariable<?>,Integer> registerOf = new IdentityHashMap<>();
+        List<NodeVariable<?>> loads = new ArrayList<>();
+        List<Integer> loadRegister = new ArrayList<>();
+        List<NodeVariable<?>> stores = new ArrayList<>();
+        List<Integer> storeRegister = new ArrayList<>();
+        List<Integer> loadNode = new ArrayList<>();
+        List<Integer> opNode = new ArrayList<>();
+        List<NodeConnection> transfers = new ArrayList<>();
+        int [] code = new int[plan.order.length*4];
+        int pc = 0;
+        int registerCount = 0;
+
+        for(int i=0;i<plan.order.length;++i) {
+            Node n = plan.order[i];
+            if(!(n instanceof PureNode)) return null;
+            Integer op = OPCODES.get(n.getClass());
+            // a source is never updated, so it must only hold a value given from outside.
+            if(op==null && !(n instanceof SupergraphInput)) return null;
+
+            int [] operands = new int[2];
+            int operandCount = 0;
+            NodeVariable<?> output = null;
+            for(int j=0;j<n.getNumVariables();++j) {
+                NodeVariable<?> v = n.getVariable(j);
+                if(v.getHasInput()) {
+                    if(op==null || operandCount==2) return null;
+                    Integer r = registerOf.get(v);
+                    if(r==null) {
+                        r = registerCount++;
+                        registerOf.put(v,r);
+                        loads.add(v);
+                        loadRegister.add(r);
+                        loadNode.add(i);
+                    }
+                    operands[operandCount++] = r;
+                }
+                if(v.getHasOutput()) {
+                    if(op!=null && output!=null) return null;
+                    output = v;
+                    int r = registerCount++;
+                    registerOf.put(v,r);
+                    if(op==null) {
+                        // a source is read with getDouble() on every run.
+                        if(!isNumeric(v)) return null;
+                        loads.add(v);
+                        loadRegister.add(r);
+                        loadNode.add(i);
+                    } else {
+                        stores.add(v);
+                        storeRegister.add(r);
+                    }
+                }
+            }
+
+            if(op!=null) {
+                if(output==null || operandCount != getArity(op)) return null;
+                opNode.add(i);
+                code[pc++] = op;
+                code[pc++] = registerOf.get(output);
+                code[pc++] = operands[0];
+                code[pc++] = operands[operandCount-1];
+            }
+
+            // downstream inputs share the register of the output that feeds them.
+            for(NodeConnection c : plan.outbound[i]) {
+                if(!c.isValidDataType()) return null;
+                Integer r = registerOf.get(c.getInputVariable());
+                if(r==null) return null;
+                NodeVariable<?> downstream = c.getOutputVariable();
+                registerOf.put(downstream,r);
+                stores.add(downstream);
+                storeRegister.add(r);
+                transfers.add(c);
+            }
+        }
+
+        return new CompiledGraph(plan.order.clone(),registerOf,registerCount,Arrays.copyOf(code,pc),loads,loadRegister,stores,storeRegister,
+                loadNode,opNode,transfers);
+    }
+
+    /**
+     * @param v a variable.
+     * @return true if the value of v is always a {@link Number}.
+     */
+    private static boolean isNumeric(NodeVariable<?> v) {
+        return Number.class.isAssignableFrom(v.getTypeClass());
+    }
+
+    private static int getArity(int op) {
+        switch(op) {
+            case SIN:
+            case COS:
+            case TAN:  return 1;
+            default:  return 2;
+        }
+    }
+
+    /**
+     * Read the sources, run the program, write the results, and clean every {@link NodeVariable}.
+     * @param metrics where to record the run, or null.  Every {@link Node} is counted as updated once, timed by the
+     *                loads and instructions that belong to it, and every {@link NodeConnection} as sending one value.
+     */
+    void run(ExecutionMetrics metrics) {
+        double [] r = registers;
+        if(metrics==null) {
+            for(int i=0;i<loads.length;++i) r[loadRegister[i]] = loads[i].getDouble();
+            execute(code,r);
+        } else {
+            runMeasured(r,metrics);
+        }
+
+        for(int i=0;i<stores.length;++i) stores[i].setDouble(r[storeRegister[i]]);
+        if(metrics!=null) {
+            for(NodeConnection c : transfers) metrics.recordTransfer(c);
+        }
+        for(Node n : nodes) {
+            n.cleanAllInputs();
+            n.cleanAllOutputs();
+        }
+    }
+
+    /**
+     * Read the sources and run the program one step at a time, timing each step.
+     * @param r the registers.
+     * @param metrics where to record each {@link Node}.
+     */
+    private void runMeasured(double[] r,ExecutionMetrics metrics) {
+        long [] nanos = new long[nodes.length];
+        for(int i=0;i<loads.length;++i) {
+            long start = System.nanoTime();
+            r[loadRegister[i]] = loads[i].getDouble();
+            nanos[loadNode[i]] += System.nanoTime()-start;
+        }
+        for(int pc=0,k=0;pc<code.length;pc+=4,++k) {
+            long start = System.nanoTime();
+            r[code[pc+1]] = apply(code[pc],r[code[pc+2]],r[code[pc+3]]);
+            nanos[opNode[k]] += System.nanoTime()-start;
+        }
+        for(int i=0;i<nodes.length;++i) metrics.recordUpdate(nodes[i],nanos[i]);
+    }
+
+    /**
+     * Run a program over a set of registers.
+     * @param code the instructions.
+     * @param r the registers.
+     */
+    static void execute(int[] code,double[] r) {
+        for(int pc=0;pc<code.length;pc+=4) {
+            r[code[pc+1]] = apply(code[pc],r[code[pc+2]],r[code[pc+3]]);
+        }
+    }
+
+    /**
+     * @param op the opcode.
+     * @param a the first operand.
+     * @param b the second operand.  Ignored by unary operations.
+     * @return the result of one instruction.
+     */
+    private static double apply(int op,double a,double b) {
+        switch(op) {
+            case ADD:       return a + b;
+            case SUBTRACT:  return a - b;
+            case MULTIPLY:  return a * b;
+            case DIVIDE:    return (b==0) ? 0 : a / b;
+            case MIN:       return Math.min(a,b);
+            case MAX:       return Math.max(a,b);
+            case SIN:       return Math.sin(a);
+            case COS:       return Math.cos(a);
+            case TAN:       return Math.tan(a);
+            case ATAN2:     return Math.atan2(a,b);
+            default: throw new IllegalStateException("unknown opcode "+op);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * A {@link NodeVariable} for {@link Number}s that stores a primitive {@code double}.  {@link #getDouble()} and
+ * {@link #setDouble(double)} never allocate, and a {@link NodeConnection} between two primitive variables moves the
+ * value without boxing.  {@link #getValue()} still returns a {@link Double} for everyone else.
+ */
+public class DoubleNodeVariable extends NodeVariable<Number> {
+    private double primitive;
+
+    protected DoubleNodeVariable(String name,double defaultValue,boolean hasInput,boolean hasOutput) {
+        super(name,Number.class,null,hasInput,hasOutput);
+        primitive = defaultValue;
+    }
+
+    @Override
+    public NodeVariable<Number> createInverse() {
+        return new DoubleNodeVariable(name,primitive,!hasInput,!hasOutput);
+    }
+
+    /**
+     * @return the value boxed as a {@link Double}.  A new box every time, so that a reader on another thread never sees
+     * a box of an older value.
+     */
+    @Override
+    public Number getValue() {
+        return primitive;
+    }
+
+    @Override
+    public void setValue(Object arg0) {
+        if(isValidType(arg0)) setDouble(((Number)arg0).doubleValue());
+    }
+
+    @Override
+    public boolean acceptsValueOf(NodeVariable<?> source) {
+        if(source instanceof DoubleNodeVariable || source instanceof LongNodeVariable) return true;
+        return super.acceptsValueOf(source);
+    }
+
+    @Override
+    public void setValueFrom(NodeVariable<?> source) {
+        if(source instanceof DoubleNodeVariable || source instanceof LongNodeVariable) setDouble(source.getDouble());
+        else super.setValueFrom(source);
+    }
+
+    @Override
+    public boolean hasSameValueAs(NodeVariable<?> source) {
+        if(source instanceof DoubleNodeVariable || source instanceof LongNodeVariable) {
+            return Double.compare(primitive,source.getDouble())==0;
+        }
+        return super.hasSameValueAs(source);
+    }
+
+    @Override
+    public double getDouble() {
+        return primitive;
+    }
+
+    @Override
+    public void setDouble(double v) {
+        primitive = v;
+        setIsDirty(true);
+    }
+
+    @Override
+    public long getLong() {
+        return (long)primitive;
+    }
+
+    @Override
+    public void setLong(long v) {
+        setDouble(v);
+    }
+}
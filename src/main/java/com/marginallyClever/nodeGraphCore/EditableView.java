@@ -0,0 +1,70 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * A live view of a list inside a {@link NodeGraph}, handed out by {@link NodeGraph#getNodes()} and
+ * {@link NodeGraph#getConnections()}.  Every change that adds, removes or replaces an element is reported so that the
+ * graph can rebuild the indexes it keeps beside the list.  Sorting only reorders, and is not reported.
+ * @param <E> the type of element.
+ */
+class EditableView<E> extends AbstractList<E> implements RandomAccess {
+    private final List<E> list;
+    private final Consumer<? super E> check;
+    private final Runnable onEdit;
+
+    /**
+     * @param list the list to show.
+     * @param check called with each element before it is put in the list.  Throws to refuse it.
+     * @param onEdit called after each change to the elements of the list.
+     */
+    EditableView(List<E> list,Consumer<? super E> check,Runnable onEdit) {
+        this.list = list;
+        this.check = check;
+        this.onEdit = onEdit;
+    }
+
+    @Override
+    public E get(int index) {
+        return list.get(index);
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public E set(int index,E element) {
+        check.accept(element);
+        E old = list.set(index,element);
+        onEdit.run();
+        return old;
+    }
+
+    @Override
+    public void add(int index,E element) {
+        check.accept(element);
+        list.add(index,element);
+        modCount++;
+        onEdit.run();
+    }
+
+    @Override
+    public E remove(int index) {
+        E old = list.remove(index);
+        modCount++;
+        onEdit.run();
+        return old;
+    }
+
+    @Override
+    public void sort(Comparator<? super E> c) {
+        list.sort(c);
+        modCount++;
+    }
+}
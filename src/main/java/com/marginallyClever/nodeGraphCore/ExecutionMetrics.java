@@ -0,0 +1,84 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ExecutionMetrics} holds the {@link NodeMetrics} of every {@link Node} in a {@link NodeGraph} and counts the
+ * values sent across each {@link NodeConnection}.  Nothing is recorded unless
+ * {@link NodeGraph#setMetricsEnabled(boolean)} is on.  Recording takes no locks, so parallel updates do not wait on
+ * each other.
+ */
+public class ExecutionMetrics {
+    private final Map<Node,NodeMetrics> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * The graph whose {@link NodeConnection}s carry the transfer counters.
+     */
+    private final NodeGraph graph;
+
+    ExecutionMetrics(NodeGraph graph) {
+        super();
+        this.graph = graph;
+    }
+
+    /**
+     * Record one update of a {@link Node}.  Safe to call from any thread.
+     * @param n the {@link Node} that was updated.
+     * @param nanos how long the update took, in nanoseconds.
+     */
+    void recordUpdate(Node n,long nanos) {
+        NodeMetrics m = nodes.get(n);
+        if(m==null) m = nodes.computeIfAbsent(n,k->new NodeMetrics());
+        m.record(nanos);
+    }
+
+    /**
+     * Record one value sent across a {@link NodeConnection}.  The count is kept on the {@link NodeConnection} itself
+     * so no lookup is needed.
+     * @param c the {@link NodeConnection} that sent a value.
+     */
+    void recordTransfer(NodeConnection c) {
+        c.transfers++;
+    }
+
+    /**
+     * @param n the {@link Node} to check.
+     * @return the {@link NodeMetrics} of the {@link Node}, or null if it has not been updated while metrics were on.
+     */
+    public NodeMetrics get(Node n) {
+        return nodes.get(n);
+    }
+
+    /**
+     * @return an unmodifiable view of the {@link NodeMetrics} of every {@link Node} that has been updated.
+     */
+    public Map<Node,NodeMetrics> getAll() {
+        return Collections.unmodifiableMap(nodes);
+    }
+
+    /**
+     * @param c the {@link NodeConnection} to check.
+     * @return the number of values sent across the {@link NodeConnection} while metrics were on.
+     */
+    public long getTransferCount(NodeConnection c) {
+        return c.transfers;
+    }
+
+    /**
+     * Forget everything recorded about a {@link Node}.  Called when it leaves the graph.
+     * @param n the {@link Node} to forget.
+     */
+    void forget(Node n) {
+        nodes.remove(n);
+    }
+
+    /**
+     * Forget everything.
+     */
+    public void reset() {
+        nodes.clear();
+        for(NodeConnection c : graph.getConnections()) c.transfers = 0;
+    }
+}
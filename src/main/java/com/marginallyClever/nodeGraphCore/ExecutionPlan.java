@@ -0,0 +1,482 @@
+package com.marginallyClever.nodeGraphCore;
+
+import com.marginallyClever.nodeGraphCore.jfr.ConnectionTransferEvent;
+import com.marginallyClever.nodeGraphCore.jfr.NodeUpdateEvent;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * {@link ExecutionPlan} is a compiled, topologically sorted view of a {@link NodeGraph}.  Every {@link Node} appears
+ * after all the {@link Node}s that feed it, so one pass over the plan delivers final values from one end of a chain to
+ * the other.  {@link NodeGraph} caches the plan and rebuilds it only when the topology changes.
+ * <p>The {@link Node}s are grouped into levels.  A {@link Node} in level L is only fed by {@link Node}s in levels
+ * before L, so every {@link Node} in one level can be updated at the same time.</p>
+ * <p>{@link Node}s caught in a feedback loop cannot be sorted.  Each loop is run as a unit, over and over until its
+ * values settle, while everything else is still visited once.</p>
+ * <p>The plan also keeps a worklist of pending {@link Node}s.  A {@link Node} is pending when one of its
+ * {@link NodeVariable}s became dirty since it was last visited.  {@link #run(ForkJoinPool)} only visits pending
+ * {@link Node}s, so the cost of an update is proportional to the part of the graph downstream of a change.</p>
+ */
+class ExecutionPlan {
+    /**
+     * The {@link Node}s in the order they should be updated, grouped by level.
+     */
+    final Node[] order;
+
+    /**
+     * {@code outbound[i]} are the {@link NodeConnection}s leaving {@code order[i]}.
+     */
+    final NodeConnection[][] outbound;
+
+    /**
+     * {@code order[levelStart[L]]} to {@code order[levelStart[L+1]-1]} are the {@link Node}s in level L.
+     */
+    final int[] levelStart;
+
+    /**
+     * {@link NodeConnection}s whose input {@link Node} is not part of the graph.  They are applied after the pass.
+     */
+    final NodeConnection[] unordered;
+
+    /**
+     * The {@link Node}s of feedback loop k are {@code order[loopStart[k]]} to {@code order[loopEnd[k]-1]}.  A loop is
+     * always run in sequence.
+     */
+    private final int[] loopStart, loopEnd;
+
+    /**
+     * {@code loopAt[i]} is the feedback loop that {@code order[i]} belongs to, or -1.
+     */
+    private final int[] loopAt;
+
+    /**
+     * The {@link NodeConnection}s between two {@link Node}s of the same feedback loop.
+     */
+    private final Set<NodeConnection> feedback = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * {@link NodeGraph#getStructureVersion()} when this plan was compiled, used to catch edits made directly to the
+     * lists of the graph.
+     */
+    private final long structureVersion;
+
+    /**
+     * The indexes in {@link #order} of {@link Node}s that must be visited on the next run.
+     */
+    private final BitSet pending = new BitSet();
+
+    /**
+     * The indexes in {@link #order} of {@link Node}s visited during the current run.  Their outputs are cleaned at the end.
+     */
+    private final BitSet touched = new BitSet();
+
+    /**
+     * scratch space used to gather the pending {@link Node}s of one level.
+     */
+    private final int[] batch;
+
+    private static final NodeConnection[] NO_CONNECTIONS = new NodeConnection[0];
+
+    /**
+     * The {@link NodeGraph} that owns this plan.  It starts the work of {@link AsyncNode}s.
+     */
+    private final NodeGraph graph;
+
+    /**
+     * Where the current run records its metrics, or null when metrics are off.
+     */
+    private ExecutionMetrics metrics;
+
+    /**
+     * Compiles a plan.  First the feedback loops are found (see {@link LoopIndex#findComponents(int[][])}), then the
+     * loops and the remaining {@link Node}s are sorted with Kahn's algorithm, treating each loop as a single unit.
+     * Ties are broken by insertion order.  The {@link Node}s of one loop are kept together, in insertion order, in
+     * one level.  Every {@link Node} starts pending.
+     * @param graph the {@link NodeGraph} that owns this plan.
+     * @param nodes the {@link Node}s of the graph.
+     * @param connections the {@link NodeConnection}s of the graph.
+     */
+    ExecutionPlan(NodeGraph graph, List<Node> nodes, List<NodeConnection> connections) {
+        this.graph = graph;
+        structureVersion = graph.getStructureVersion();
+        int size = nodes.size();
+
+        Map<Node,Integer> index = new IdentityHashMap<>();
+        for(int i=0;i<size;++i) index.putIfAbsent(nodes.get(i),i);
+
+        List<List<NodeConnection>> out = new ArrayList<>(size);
+        for(int i=0;i<size;++i) out.add(new ArrayList<>());
+        int [] targetCount = new int[size];
+        List<NodeConnection> orphans = new ArrayList<>();
+
+        for(NodeConnection c : connections) {
+            Integer from = index.get(c.getInNode());
+            if(from==null) {
+                orphans.add(c);
+                continue;
+            }
+            out.get(from).add(c);
+            if(index.get(c.getOutNode())!=null) targetCount[from]++;
+        }
+
+        int [][] next = new int[size][];
+        boolean [] selfLoop = new boolean[size];
+        for(int i=0;i<size;++i) {
+            next[i] = new int[targetCount[i]];
+            int count=0;
+            for(NodeConnection c : out.get(i)) {
+                Integer to = index.get(c.getOutNode());
+                if(to==null) continue;
+                if(to==i) selfLoop[i]=true;
+                next[i][count++]=to;
+            }
+        }
+
+        // group the nodes by component, in insertion order.
+        int [] component = LoopIndex.findComponents(next);
+        int componentCount = 0;
+        for(int c : component) componentCount = Math.max(componentCount,c+1);
+        int [] memberStart = new int[componentCount+1];
+        for(int c : component) memberStart[c+1]++;
+        for(int c=0;c<componentCount;++c) memberStart[c+1]+=memberStart[c];
+        int [] members = new int[size];
+        int [] fill = Arrays.copyOf(memberStart,componentCount);
+        for(int i=0;i<size;++i) members[fill[component[i]]++]=i;
+
+        int [] inDegree = new int[componentCount];
+        for(int i=0;i<size;++i) {
+            for(int j : next[i]) {
+                if(component[j]!=component[i]) inDegree[component[j]]++;
+            }
+        }
+
+        int [] sorted = new int[componentCount];
+        int [] level = new int[componentCount];
+        int head=0, tail=0, levelCount=0;
+        for(int i=0;i<size;++i) {
+            int c = component[i];
+            // only the first member of each component may start it.
+            if(inDegree[c]==0 && members[memberStart[c]]==i) sorted[tail++]=c;
+        }
+        while(head<tail) {
+            int c = sorted[head++];
+            levelCount = Math.max(levelCount,level[c]+1);
+            for(int m=memberStart[c];m<memberStart[c+1];++m) {
+                for(int j : next[members[m]]) {
+                    int d = component[j];
+                    if(d==c) continue;
+                    level[d] = Math.max(level[d],level[c]+1);
+                    if(--inDegree[d]==0) sorted[tail++]=d;
+                }
+            }
+        }
+
+        // stable counting sort by level keeps the sorted order within each level.
+        levelStart = new int[levelCount+1];
+        for(int c=0;c<componentCount;++c) levelStart[level[c]+1] += memberStart[c+1]-memberStart[c];
+        for(int L=0;L<levelCount;++L) levelStart[L+1]+=levelStart[L];
+        int [] nextInLevel = Arrays.copyOf(levelStart,levelCount);
+
+        order = new Node[size];
+        outbound = new NodeConnection[size][];
+        loopAt = new int[size];
+        Arrays.fill(loopAt,-1);
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        for(int k=0;k<componentCount;++k) {
+            int c = sorted[k];
+            int first = memberStart[c];
+            int last = memberStart[c+1];
+            boolean isLoop = (last-first>1) || selfLoop[members[first]];
+            int j = nextInLevel[level[c]];
+            if(isLoop) {
+                starts.add(j);
+                ends.add(j+last-first);
+            }
+            for(int m=first;m<last;++m,++j) {
+                int i = members[m];
+                order[j] = nodes.get(i);
+                List<NodeConnection> list = out.get(i);
+                outbound[j] = list.isEmpty() ? NO_CONNECTIONS : list.toArray(NO_CONNECTIONS);
+                if(isLoop) {
+                    loopAt[j] = starts.size()-1;
+                    for(NodeConnection x : list) {
+                        Integer to = index.get(x.getOutNode());
+                        if(to!=null && component[to]==c) feedback.add(x);
+                    }
+                }
+            }
+            nextInLevel[level[c]] = j;
+        }
+        loopStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        loopEnd = ends.stream().mapToInt(Integer::intValue).toArray();
+        unordered = orphans.toArray(NO_CONNECTIONS);
+        batch = new int[size];
+
+        for(int i=0;i<size;++i) {
+            if(order[i].getParentGraph()==graph) order[i].planIndex = i;
+        }
+        pending.set(0,size);
+    }
+
+    /**
+     * Adds a {@link Node} to the worklist.
+     * @param n the {@link Node} that changed.
+     */
+    void markDirty(Node n) {
+        int i = n.planIndex;
+        if(i>=0 && i<order.length && order[i]==n) pending.set(i);
+    }
+
+    /**
+     * @return true if any {@link Node} is waiting to be visited.
+     */
+    boolean hasPendingWork() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Empties the worklist.  Used when the {@link Node}s have been brought up to date some other way.
+     */
+    void clearPending() {
+        pending.clear();
+    }
+
+    /**
+     * Puts every {@link Node} on the worklist.
+     */
+    void markAllPending() {
+        pending.set(0,order.length);
+    }
+
+    /**
+     * @return true if any {@link Node} is caught in a feedback loop.
+     */
+    boolean hasLoops() {
+        return loopStart.length>0;
+    }
+
+    /**
+     * @return true if a {@link Node} or {@link NodeConnection} of the graph was added, removed or reordered since this
+     * plan was compiled.
+     */
+    boolean isStale() {
+        return structureVersion != graph.getStructureVersion();
+    }
+
+    /**
+     * @return the number of levels in this plan.
+     */
+    int getLevelCount() {
+        return levelStart.length-1;
+    }
+
+    /**
+     * Update every pending {@link Node} and transmit its outputs, one level at a time.  Transmitting an output makes
+     * the {@link Node}s downstream pending, and they are visited later in the same run.  At the end the outputs of
+     * every visited {@link Node} are cleaned.  A {@link Node} that still has dirty inputs afterwards stays pending.
+     * @param pool if not null, the pending {@link Node}s within each level are updated in parallel on this pool.  The
+     *             {@link NodeConnection}s are always applied on the calling thread, in plan order, so the results are
+     *             identical to a sequential run.
+     */
+    void run(ForkJoinPool pool) {
+        metrics = graph.getActiveMetrics();
+        int i = pending.nextSetBit(0);
+        while(i>=0 && i<order.length) {
+            int L = getLevelOf(i);
+            int end = levelStart[L+1];
+            if(pool==null) {
+                for(; i>=0 && i<end; i=pending.nextSetBit(i+1)) {
+                    int k = loopAt[i];
+                    if(k>=0) {
+                        runLoop(k);
+                        i = loopEnd[k]-1;
+                    } else {
+                        pending.clear(i);
+                        runNode(i);
+                        applyOutbound(i);
+                    }
+                }
+            } else {
+                int count=0;
+                for(; i>=0 && i<end; i=pending.nextSetBit(i+1)) {
+                    int k = loopAt[i];
+                    if(k>=0) {
+                        // a loop does not depend on anything else in its level, so it can run first.
+                        runLoop(k);
+                        i = loopEnd[k]-1;
+                    } else {
+                        batch[count++]=i;
+                    }
+                }
+                pending.clear(levelStart[L],end);
+                if(count==1) runNode(batch[0]);
+                else if(count>1) pool.invoke(new LevelTask(0,count));
+                for(int j=0;j<count;++j) {
+                    // AsyncNodes are skipped by LevelTask because starting them is not thread safe.
+                    if(order[batch[j]] instanceof AsyncNode) runNode(batch[j]);
+                    touched.set(batch[j]);
+                    applyOutbound(batch[j]);
+                }
+            }
+            i = pending.nextSetBit(end);
+        }
+        for(NodeConnection c : unordered) apply(c,metrics);
+
+        for(int j=touched.nextSetBit(0); j>=0; j=touched.nextSetBit(j+1)) {
+            Node n = order[j];
+            n.cleanAllOutputs();
+            if(n.hasDirtyInputs()) pending.set(j);
+        }
+        touched.clear();
+    }
+
+    /**
+     * @param i an index in {@link #order}.
+     * @return the level containing {@code order[i]}.
+     */
+    private int getLevelOf(int i) {
+        int L = Arrays.binarySearch(levelStart,i);
+        if(L<0) return -L-2;
+        // skip empty levels that share the same start.
+        while(levelStart[L+1]==i) L++;
+        return L;
+    }
+
+    /**
+     * Run a feedback loop as one unit.  Each pass updates every dirty {@link Node} of the loop in order.  Values sent
+     * around the loop only make a {@link Node} dirty if they are different from what it already has, so passes stop
+     * once the values have settled, or after {@link NodeGraph#getMaxLoopIterations()} passes.  Afterwards the inputs
+     * of the loop are cleaned so a loop that did not settle is not run again until something upstream changes.
+     * @param k the loop to run.
+     */
+    private void runLoop(int k) {
+        int start = loopStart[k];
+        int end = loopEnd[k];
+        pending.clear(start,end);
+        int limit = graph.getMaxLoopIterations();
+        for(int pass=0;pass<limit;++pass) {
+            boolean ran = false;
+            for(int j=start;j<end;++j) {
+                Node n = order[j];
+                if(!n.isDirty()) continue;
+                ran = true;
+                runNode(j);
+                applyOutbound(j);
+                n.cleanAllOutputs();
+            }
+            if(!ran) break;
+        }
+        pending.clear(start,end);
+        for(int j=start;j<end;++j) order[j].cleanAllInputs();
+    }
+
+    private void runNode(int i) {
+        touched.set(i);
+        updateNode(order[i]);
+    }
+
+    /**
+     * Update one {@link Node}, and time it if metrics or the {@link NodeUpdateEvent} are on.  Clean {@link Node}s are
+     * skipped and not counted.
+     * @param n the {@link Node} to update.
+     */
+    private void updateNode(Node n) {
+        ExecutionMetrics m = metrics;
+        NodeUpdateEvent event = new NodeUpdateEvent();
+        if(m==null && !event.isEnabled()) {
+            updateNodeUnmeasured(n);
+            return;
+        }
+        if(!n.isDirty()) return;
+        event.begin();
+        long start = System.nanoTime();
+        updateNodeUnmeasured(n);
+        if(m!=null) m.recordUpdate(n,System.nanoTime()-start);
+        if(event.shouldCommit()) {
+            event.setNode(n);
+            event.commit();
+        }
+    }
+
+    /**
+     * Update one {@link Node}.  {@link AsyncNode}s are started and left to finish on their own.  {@link PureNode}s
+     * may be answered by their {@link MemoCache}.
+     * @param n the {@link Node} to update.
+     */
+    private void updateNodeUnmeasured(Node n) {
+        n.updating = true;
+        try {
+            if(n instanceof AsyncNode) {
+                if(n.isDirty()) graph.startAsync(n);
+            } else if(n instanceof PureNode && graph.getMemoizePureNodes()) {
+                if(n.isDirty()) MemoCache.update(n);
+            } else {
+                n.updateIfNotDirty();
+            }
+        } finally {
+            n.updating = false;
+        }
+    }
+
+    private void applyOutbound(int i) {
+        if(loopAt[i]<0) {
+            for(NodeConnection c : outbound[i]) apply(c,metrics,false);
+        } else {
+            for(NodeConnection c : outbound[i]) apply(c,metrics,feedback.contains(c));
+        }
+    }
+
+    /**
+     * Send the value of a {@link NodeConnection} if the upstream is dirty, and record the transfer.
+     * @param c the {@link NodeConnection} to apply.
+     * @param metrics where to count the transfer, or null.
+     */
+    static void apply(NodeConnection c,ExecutionMetrics metrics) {
+        apply(c,metrics,false);
+    }
+
+    /**
+     * Send the value of a {@link NodeConnection} if the upstream is dirty, and record the transfer.
+     * @param c the {@link NodeConnection} to apply.
+     * @param metrics where to count the transfer, or null.
+     * @param onlyIfChanged true to skip values the downstream already has.  See
+     *                      {@link NodeConnection#applyIfChanged()}.
+     */
+    static void apply(NodeConnection c,ExecutionMetrics metrics,boolean onlyIfChanged) {
+        ConnectionTransferEvent event = new ConnectionTransferEvent();
+        event.begin();
+        if(!(onlyIfChanged ? c.applyIfChanged() : c.applyIfDirty())) return;
+        if(metrics!=null) metrics.recordTransfer(c);
+        if(event.shouldCommit()) {
+            event.setConnection(c);
+            event.commit();
+        }
+    }
+
+    /**
+     * Updates a range of the pending {@link Node}s gathered from one level, splitting the range in half until each
+     * task has one {@link Node}.
+     */
+    private class LevelTask extends RecursiveAction {
+        private final int start, end;
+
+        LevelTask(int start,int end) {
+            this.start=start;
+            this.end=end;
+        }
+
+        @Override
+        protected void compute() {
+            if(end-start==1) {
+                Node n = order[batch[start]];
+                if(!(n instanceof AsyncNode)) updateNode(n);
+                return;
+            }
+            int mid = (start+end)>>>1;
+            invokeAll(new LevelTask(start,mid),new LevelTask(mid,end));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.marginallyClever.nodeGraphCore;
+
+import com.google.gson.Gson;
+import com.marginallyClever.nodeGraphCore.jfr.DeepCopyEvent;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes deep copies of {@link NodeGraph}s and {@link Node}s without going through json.  Each {@link Node} is
+ * cloned with {@link Node#create()}, the state of each {@link NodeVariable} is copied field by field, and every
+ * {@link NodeConnection} is remapped to the copied {@link Node}s.
+ * <p>Values are copied by the {@link ValueCopier} registered for their exact class.  Immutable values are shared.
+ * Values of any other class are copied through their json, as before.</p>
+ */
+public class GraphCopier {
+    private static final Map<Class<?>,ValueCopier<Object>> copiers = new ConcurrentHashMap<>();
+
+    static {
+        for(Class<?> c : List.of(String.class,Double.class,Float.class,Long.class,Integer.class,Short.class,
+                Byte.class,Character.class,Boolean.class,Color.class,Font.class)) {
+            registerValueCopier(c,(v)->v);
+        }
+        registerValueCopier(Rectangle.class,Rectangle::new);
+        registerValueCopier(Point.class,Point::new);
+        registerValueCopier(BufferedImage.class,GraphCopier::copyImage);
+    }
+
+    /**
+     * Use a {@link ValueCopier} for every value of exactly this class.  Replaces any copier already registered for
+     * the class.  Safe to call while other threads are copying.
+     * @param type the class of value.
+     * @param copier the {@link ValueCopier}.
+     * @param <T> the type of value.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void registerValueCopier(Class<T> type, ValueCopier<T> copier) {
+        copiers.put(type,(ValueCopier<Object>)copier);
+    }
+
+    /**
+     * @param graph the {@link NodeGraph} to copy.
+     * @return a deep copy of the graph.  {@link Node}s keep their unique IDs.
+     */
+    public static NodeGraph copy(NodeGraph graph) {
+        return copy(graph.getNodes(),graph.getConnections());
+    }
+
+    /**
+     * @param nodes the {@link Node}s to copy.  They stay where they are.
+     * @param connections the {@link NodeConnection}s to copy.  Both ends must be in nodes.
+     * @return a new graph with deep copies of the nodes and connections.  {@link Node}s keep their unique IDs.
+     */
+    public static NodeGraph copy(List<Node> nodes,List<NodeConnection> connections) {
+        DeepCopyEvent event = new DeepCopyEvent();
+        event.begin();
+
+        Map<Node,Node> copies = new IdentityHashMap<>(nodes.size()*2);
+        NodeGraph result = new NodeGraph();
+        for(Node n : nodes) {
+            Node c = copyNode(n);
+            copies.put(n,c);
+            result.add(c);
+        }
+
+        List<NodeConnection> copiedConnections = new ArrayList<>(connections.size());
+        for(NodeConnection c : connections) {
+            copiedConnections.add(JSONHelper.createNodeConnection(
+                    copies.get(c.getInNode()),c.getInVariableIndex(),
+                    copies.get(c.getOutNode()),c.getOutVariableIndex()));
+        }
+        result.addAll(copiedConnections);
+
+        if(event.shouldCommit()) {
+            event.setSubject(NodeGraph.class,nodes.size());
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * @param source the {@link Node} to copy.
+     * @return a deep copy of the node, not in any graph.
+     */
+    public static Node copy(Node source) {
+        DeepCopyEvent event = new DeepCopyEvent();
+        event.begin();
+        Node copy = copyNode(source);
+        if(event.shouldCommit()) {
+            event.setSubject(Node.class,1);
+            event.commit();
+        }
+        return copy;
+    }
+
+    private static Node copyNode(Node source) {
+        Node copy = source.create();
+        if(source instanceof Subgraph) {
+            ((Subgraph)copy).setDefinition(((Subgraph)source).getDefinition());
+            ((Subgraph)copy).setResultCache(((Subgraph)source).getResultCache());
+        }
+        copy.setUniqueID(source.getUniqueID());
+        if(source.getLabel()!=null) copy.setLabel(source.getLabel());
+        copy.setRectangle(new Rectangle(source.getRectangle()));
+
+        List<NodeVariable<?>> from = source.getVariables();
+        List<NodeVariable<?>> to = copy.getVariables();
+        for(int i=0;i<from.size();++i) {
+            NodeVariable<?> v = from.get(i);
+            // create() almost always makes the variables in the same order.
+            NodeVariable<?> w = (i<to.size() && to.get(i).getName().equals(v.getName())) ? to.get(i) : findVariable(to,v.getName());
+            if(w!=null) copyVariable(v,w);
+        }
+        return copy;
+    }
+
+    private static NodeVariable<?> findVariable(List<NodeVariable<?>> variables, String name) {
+        for(NodeVariable<?> v : variables) {
+            if(v.getName().equals(name)) return v;
+        }
+        return null;
+    }
+
+    private static void copyVariable(NodeVariable<?> from, NodeVariable<?> to) {
+        // set the value first, otherwise isDirty will be overwritten
+        if(from instanceof DoubleNodeVariable || from instanceof LongNodeVariable || from instanceof BooleanNodeVariable) {
+            to.setValueFrom(from);
+        } else {
+            to.setValue(copyValue(from.getValue()));
+        }
+        to.hasInput = from.hasInput;
+        to.hasOutput = from.hasOutput;
+        to.rectangle.setBounds(from.rectangle);
+        to.isDirty = from.isDirty;
+    }
+
+    /**
+     * @param value the value to copy.
+     * @return a copy of the value made by the registered {@link ValueCopier}, or through json if there is none.
+     */
+    public static Object copyValue(Object value) {
+        if(value==null) return null;
+        Class<?> type = value.getClass();
+        ValueCopier<Object> copier = copiers.get(type);
+        if(copier!=null) return copier.copy(value);
+        if(type.isEnum() || value instanceof Enum) return value;
+
+        Gson gson = JSONHelper.getDefaultGson();
+        return gson.fromJson(gson.toJsonTree(value),type);
+    }
+
+    private static BufferedImage copyImage(BufferedImage image) {
+        return new BufferedImage(
+                image.getColorModel(),
+                image.copyData(image.getRaster().createCompatibleWritableRaster()),
+                image.isAlphaPremultiplied(),
+                null);
+    }
+}
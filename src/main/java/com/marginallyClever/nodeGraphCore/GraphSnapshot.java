@@ -0,0 +1,70 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A point in time view of a {@link NodeGraph}, made by {@link NodeGraph#snapshot()}.  A {@link GraphSnapshot} never
+ * changes and can be read from any thread, for undo, autosave or a reader that should not see the graph change under
+ * it.
+ * <p>Snapshots of the same graph share every {@link NodeSnapshot} and {@link Connection} that did not change between
+ * them, so thousands of versions of a large graph fit in little more memory than one.</p>
+ */
+public final class GraphSnapshot {
+    /**
+     * One {@link NodeConnection}.  The ends are the keys of {@link NodeSnapshot}s, -1 if that end is not connected.
+     */
+    static final class Connection {
+        final int inNode, inIndex, outNode, outIndex;
+
+        Connection(int inNode,int inIndex,int outNode,int outIndex) {
+            this.inNode = inNode;
+            this.inIndex = inIndex;
+            this.outNode = outNode;
+            this.outIndex = outIndex;
+        }
+    }
+
+    private final PersistentIntMap<NodeSnapshot> nodes;
+    private final PersistentIntMap<Connection> connections;
+
+    GraphSnapshot(PersistentIntMap<NodeSnapshot> nodes,PersistentIntMap<Connection> connections) {
+        this.nodes = nodes;
+        this.connections = connections;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return a new {@link List} of the {@link NodeSnapshot}s, in the order of {@link NodeGraph#getNodes()}.
+     */
+    public List<NodeSnapshot> getNodes() {
+        List<NodeSnapshot> list = new ArrayList<>(nodes.size());
+        nodes.forEach(list::add);
+        return list;
+    }
+
+    /**
+     * @return a new {@link NodeGraph} in the state described by this snapshot.
+     */
+    public NodeGraph toGraph() {
+        NodeGraph graph = new NodeGraph();
+        Map<Integer,Node> byKey = new HashMap<>();
+        nodes.forEach((s)->byKey.put(s.key,graph.add(s.toNode())));
+
+        List<NodeConnection> list = new ArrayList<>(connections.size());
+        connections.forEach((c)->list.add(JSONHelper.createNodeConnection(
+                byKey.get(c.inNode),c.inIndex,
+                byKey.get(c.outNode),c.outIndex)));
+        graph.addAll(list);
+        return graph;
+    }
+}
@@ -1,12 +1,15 @@
 package com.marginallyClever.nodeGraphCore;
 
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.marginallyClever.nodeGraphCore.json.NodeGraphJsonAdapter;
 import com.marginallyClever.nodeGraphCore.json.NodeJsonAdapter;
 
 import java.awt.*;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Collection;
 
 /**
@@ -30,13 +33,12 @@ public class JSONHelper {
     }
 
     /**
-     * Returns the default {@link GsonBuilder}.
+     * Returns the default {@link GsonBuilder}.  It writes compact json with no indentation.
      * @return the default {@link GsonBuilder}.
      */
     public static GsonBuilder getDefaultGsonBuilder() {
         if(builder == null){
             builder = new GsonBuilder();
-            builder.setPrettyPrinting();
             registerTypeAdapters(builder);
         }
         return builder;
@@ -52,23 +54,62 @@ public class JSONHelper {
     }
 
     /**
-     * Creates a deep copy of the given {@link NodeGraph} using json serialization/deserialization
+     * Writes a {@link NodeGraph} to a stream as compact json as it is serialized.  Only one {@link Node} is held as
+     * json at a time.  Wrap file streams in a {@link java.io.BufferedWriter}.
+     * @param graph the {@link NodeGraph} to write.
+     * @param writer where to write it.  The writer is flushed but not closed.
+     * @throws IOException if the writer fails.
+     */
+    public static void saveGraph(NodeGraph graph, Writer writer) throws IOException {
+        saveGraph(graph,writer,false);
+    }
+
+    /**
+     * Writes a {@link NodeGraph} to a stream as it is serialized.  Only one {@link Node} is held as json at a time.
+     * Wrap file streams in a {@link java.io.BufferedWriter}.
+     * @param graph the {@link NodeGraph} to write.
+     * @param writer where to write it.  The writer is flushed but not closed.
+     * @param pretty true to indent the json for people to read.  Indented files are several times larger.
+     * @throws IOException if the writer fails.
+     */
+    public static void saveGraph(NodeGraph graph, Writer writer, boolean pretty) throws IOException {
+        Gson gson = getDefaultGson();
+        JsonWriter out = gson.newJsonWriter(writer);
+        if(pretty) out.setIndent("  ");
+        gson.getAdapter(NodeGraph.class).write(out, graph);
+        out.flush();
+    }
+
+    /**
+     * Reads a {@link NodeGraph} from a stream as it is parsed.  Only one {@link Node} is held as json at a time.
+     * Wrap file streams in a {@link java.io.BufferedReader}.
+     * @param reader where to read from.  The reader is not closed.
+     * @return the {@link NodeGraph}.
+     * @throws IOException if the reader fails.
+     * @throws JsonParseException if the stream is not a {@link NodeGraph}.
+     */
+    public static NodeGraph loadGraph(Reader reader) throws IOException {
+        Gson gson = getDefaultGson();
+        JsonReader in = gson.newJsonReader(reader);
+        return gson.getAdapter(NodeGraph.class).read(in);
+    }
+
+    /**
+     * Creates a deep copy of the given {@link NodeGraph} with {@link GraphCopier}.  No json is made.
      * @param graph the {@link NodeGraph} to copy
      * @return the {@link NodeGraph} copy
      */
     public static NodeGraph deepCopy(NodeGraph graph){
-        JsonElement jsonElement = JSONHelper.getDefaultGson().toJsonTree(graph);
-        return JSONHelper.getDefaultGson().fromJson(jsonElement, NodeGraph.class);
+        return GraphCopier.copy(graph);
     }
 
     /**
-     * Creates a deep copy of the given {@link Node} using json serialization/deserialization
-     * @param source the {@link NodeGraph} to copy
-     * @return the {@link NodeGraph} copy
+     * Creates a deep copy of the given {@link Node} with {@link GraphCopier}.  No json is made.
+     * @param source the {@link Node} to copy
+     * @return the {@link Node} copy
      */
     public static Node deepCopy(Node source){
-        JsonElement jsonElement = JSONHelper.getDefaultGson().toJsonTree(source);
-        return JSONHelper.getDefaultGson().fromJson(jsonElement, Node.class);
+        return GraphCopier.copy(source);
     }
 
     /**
@@ -96,6 +137,58 @@ public class JSONHelper {
         }
     }
 
+    /**
+     * Used for writing a {@link Collection} of {@link NodeConnection}s straight to a {@link JsonWriter}.  The json is
+     * the same as {@link #serializeNodeConnections(Collection)}.
+     * @param out the {@link JsonWriter}
+     * @param nodeConnections the {@link Collection} of {@link NodeConnection}s to write
+     * @throws IOException if the writer fails
+     */
+    public static void writeNodeConnections(JsonWriter out, Collection<NodeConnection> nodeConnections) throws IOException {
+        out.beginArray();
+        for(NodeConnection connection : nodeConnections) {
+            out.beginObject();
+            if(connection.getInNode() != null) {
+                out.name("inNode").value(connection.getInNode().getUniqueName());
+                out.name("inVariableIndex").value(connection.getInVariableIndex());
+            }
+            if(connection.getOutNode() != null) {
+                out.name("outNode").value(connection.getOutNode().getUniqueName());
+                out.name("outVariableIndex").value(connection.getOutVariableIndex());
+            }
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Used for reading a {@link Collection} of {@link NodeConnection}s straight from a {@link JsonReader}.  The
+     * {@link Node}s they connect must already be in dstGraph.
+     * @param in the {@link JsonReader}
+     * @param dstGraph the destination {@link NodeGraph}, where the connections will be added
+     * @throws IOException if the reader fails
+     */
+    public static void readNodeConnections(JsonReader in, NodeGraph dstGraph) throws IOException {
+        in.beginArray();
+        while(in.hasNext()) {
+            String inNode = null, outNode = null;
+            int inIndex = 0, outIndex = 0;
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "inNode":  inNode = in.nextString();  break;
+                    case "inVariableIndex":  inIndex = in.nextInt();  break;
+                    case "outNode":  outNode = in.nextString();  break;
+                    case "outVariableIndex":  outIndex = in.nextInt();  break;
+                    default:  in.skipValue();  break;
+                }
+            }
+            in.endObject();
+            dstGraph.add(createNodeConnection(dstGraph, inNode, inIndex, outNode, outIndex));
+        }
+        in.endArray();
+    }
+
     /**
      * Used for serializing a single {@link NodeConnection} to a {@link JsonElement}
      * @param connection the {@link NodeConnection} to serialize
@@ -124,17 +217,45 @@ public class JSONHelper {
      */
     public static NodeConnection deserializeNodeConnection(JsonElement jsonElement, NodeGraph dstGraph){
         JsonObject jsonObject = jsonElement.getAsJsonObject();
-        NodeConnection connection = new NodeConnection();
-
+        String inNode = null, outNode = null;
+        int inIndex = 0, outIndex = 0;
         if(jsonObject.has("inNode")) {
-            Node n = dstGraph.findNodeWithUniqueName(jsonObject.get("inNode").getAsString());
-            int i = jsonObject.get("inVariableIndex").getAsInt();
-            connection.setInput(n,i);
+            inNode = jsonObject.get("inNode").getAsString();
+            inIndex = jsonObject.get("inVariableIndex").getAsInt();
         }
         if(jsonObject.has("outNode")) {
-            Node n = dstGraph.findNodeWithUniqueName(jsonObject.get("outNode").getAsString());
-            int i = jsonObject.get("outVariableIndex").getAsInt();
-            connection.setOutput(n,i);
+            outNode = jsonObject.get("outNode").getAsString();
+            outIndex = jsonObject.get("outVariableIndex").getAsInt();
+        }
+        return createNodeConnection(dstGraph, inNode, inIndex, outNode, outIndex);
+    }
+
+    private static NodeConnection createNodeConnection(NodeGraph dstGraph, String inNode, int inIndex, String outNode, int outIndex) {
+        return createNodeConnection(
+                inNode == null ? null : dstGraph.findNodeWithUniqueName(inNode), inIndex,
+                outNode == null ? null : dstGraph.findNodeWithUniqueName(outNode), outIndex);
+    }
+
+    /**
+     * Connects two loaded {@link Node}s without changing the saved dirty state of the output {@link Node}.
+     * @param inNode the upstream {@link Node} or null.
+     * @param inIndex the upstream variable index.
+     * @param outNode the downstream {@link Node} or null.
+     * @param outIndex the downstream variable index.
+     * @return the {@link NodeConnection}
+     */
+    static NodeConnection createNodeConnection(Node inNode, int inIndex, Node outNode, int outIndex) {
+        NodeConnection connection = new NodeConnection();
+
+        if(inNode != null) {
+            connection.setInput(inNode,inIndex);
+        }
+        if(outNode != null) {
+            // connecting transmits the value.  Don't let that overwrite the saved dirty state.
+            NodeVariable<?> v = (outIndex<0 || outIndex>=outNode.getNumVariables()) ? null : outNode.getVariable(outIndex);
+            boolean wasDirty = v!=null && v.getIsDirty();
+            connection.setOutput(outNode,outIndex);
+            if(v!=null) v.setIsDirty(wasDirty);
         }
 
         return connection;
@@ -162,18 +283,7 @@ public class JSONHelper {
         JsonArray jsonArray = jsonElement.getAsJsonArray();
 
         for(JsonElement e : jsonArray){
-            JsonObject jsonObject = e.getAsJsonObject();
-            String variableName = jsonObject.get("name").getAsString();
-
-            NodeVariable<?> variable = null;
-
-            for(NodeVariable<?> v : variables){
-                if(v.getName().equals(variableName)){
-                    variable = v;
-                    break;
-                }
-            }
-
+            NodeVariable<?> variable = findNodeVariable(variables, e);
             if(variable == null){
                 continue;
             }
@@ -181,6 +291,63 @@ public class JSONHelper {
         }
     }
 
+    /**
+     * Used for writing a {@link Collection} of {@link NodeVariable}s straight to a {@link JsonWriter}.  The json is the
+     * same as {@link #serializeNodeVariables(Collection)}.
+     * @param out the {@link JsonWriter}
+     * @param variables the {@link Collection} of {@link NodeVariable}s to write
+     * @throws IOException if the writer fails
+     */
+    public static void writeNodeVariables(JsonWriter out, Collection<NodeVariable<?>> variables) throws IOException {
+        Gson gson = getDefaultGson();
+        TypeAdapter<Rectangle> rectangleAdapter = gson.getAdapter(Rectangle.class);
+        out.beginArray();
+        for(NodeVariable<?> variable : variables) {
+            out.beginObject();
+            out.name("value");
+            writeValue(gson, out, variable);
+            out.name("name").value(variable.getName());
+            out.name("hasInput").value(variable.getHasInput());
+            out.name("hasOutput").value(variable.getHasOutput());
+            out.name("bounds");
+            rectangleAdapter.write(out, variable.getRectangle());
+            out.name("isDirty").value(variable.getIsDirty());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private static <T> void writeValue(Gson gson, JsonWriter out, NodeVariable<T> variable) throws IOException {
+        gson.getAdapter(variable.getTypeClass()).write(out, variable.getValue());
+    }
+
+    /**
+     * Used for reading a {@link Collection} of {@link NodeVariable}s straight from a {@link JsonReader}.  Each variable
+     * is found by name before its value can be read, so one variable at a time is held as json.
+     * @param in the {@link JsonReader}
+     * @param variables the {@link Collection} of {@link NodeVariable}s to deserialize into, MUST contain all of the {@link NodeVariable}s required already.
+     * @throws IOException if the reader fails
+     */
+    public static void readNodeVariables(JsonReader in, Collection<NodeVariable<?>> variables) throws IOException {
+        in.beginArray();
+        while(in.hasNext()) {
+            JsonElement e = JsonParser.parseReader(in);
+            NodeVariable<?> variable = findNodeVariable(variables, e);
+            if(variable != null) deserializeNodeVariable(variable, e);
+        }
+        in.endArray();
+    }
+
+    private static NodeVariable<?> findNodeVariable(Collection<NodeVariable<?>> variables, JsonElement jsonElement) {
+        String variableName = jsonElement.getAsJsonObject().get("name").getAsString();
+        for(NodeVariable<?> v : variables){
+            if(v.getName().equals(variableName)){
+                return v;
+            }
+        }
+        return null;
+    }
+
     /**
      * Used for serializing a single {@link NodeVariable} to a {@link JsonElement}
      * @param variable the {@link NodeVariable}s to serialize
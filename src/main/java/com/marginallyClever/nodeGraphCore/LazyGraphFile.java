@@ -0,0 +1,349 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.awt.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * {@link LazyGraphFile} opens a graph saved by {@link BinaryHelper} without reading every {@link Node}.  The file is
+ * memory mapped and only the position and bounds of each {@link Node} are read when it is opened.  A {@link Node} is
+ * made with {@link NodeFactory#createNode(String)} and added to the {@link NodeGraph} the first time it is asked for,
+ * usually by {@link #loadArea(Rectangle)} as it scrolls into view.  A {@link NodeConnection} is added as soon as both
+ * of its {@link Node}s are loaded.
+ * <p>Until {@link #isFullyLoaded()} the {@link NodeGraph} holds only part of the file.  Call {@link #loadAll()} before
+ * running or saving it.  This class is not thread safe.</p>
+ */
+public class LazyGraphFile implements Closeable {
+    /**
+     * The largest part of a file mapped at once.
+     */
+    private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final NodeGraph graph;
+
+    /**
+     * The mapped parts of the file, in the order they start.  Every record fits entirely inside the last segment that
+     * starts at or before it.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<Long> segmentStarts = new ArrayList<>();
+
+    private final BinaryHelper.GraphReader reader;
+    private final ByteBufferInput input = new ByteBufferInput(null);
+
+    // one entry per Node, in file order.
+    private final long [] offsets;
+    private final int [] boundsX, boundsY, boundsW, boundsH;
+    private final Node [] nodes;
+    private int loadedCount = 0;
+    private final Rectangle bounds = new Rectangle();
+
+    // one entry per NodeConnection.  Node indexes are -1 if the connection has no node at that end.
+    private final int [] connectionIn, connectionInIndex, connectionOut, connectionOutIndex;
+    private final BitSet connectionAdded = new BitSet();
+
+    // the NodeConnections of each Node, a Node at a time.
+    private final int [] adjacencyStart;
+    private final int [] adjacency;
+
+    /**
+     * The last area given to {@link #loadArea(Rectangle)}.
+     */
+    private Rectangle lastArea;
+
+    private LazyGraphFile(File file,NodeGraph graph) throws IOException {
+        this.graph = graph;
+        channel = FileChannel.open(file.toPath(),StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            ByteBuffer header = segment(0,MAX_SEGMENT);
+            input.setBuffer(header);
+            reader = new BinaryHelper.GraphReader(BinaryHelper.readHeader(input));
+
+            int nodeCount = input.readVarInt();
+            offsets = new long[nodeCount];
+            boundsX = new int[nodeCount];
+            boundsY = new int[nodeCount];
+            boundsW = new int[nodeCount];
+            boundsH = new int[nodeCount];
+            nodes = new Node[nodeCount];
+
+            long position = header.position();
+            long maxID = 0;
+            for(int i=0;i<nodeCount;++i) {
+                offsets[i] = position;
+                ByteBuffer record = record(position);
+                position = recordEnd(position,record);
+                input.setBuffer(record);
+                input.readVarInt();  // type
+                maxID = Math.max(maxID,input.readZigZagLong());
+                input.readVarInt();  // label
+                boundsX[i] = input.readZigZagInt();
+                boundsY[i] = input.readZigZagInt();
+                boundsW[i] = input.readZigZagInt();
+                boundsH[i] = input.readZigZagInt();
+                if(i==0) bounds.setBounds(boundsX[i],boundsY[i],boundsW[i],boundsH[i]);
+                else bounds.add(new Rectangle(boundsX[i],boundsY[i],boundsW[i],boundsH[i]));
+            }
+            // nodes made before the rest are loaded must not take their IDs.
+            graph.getUniqueIDAllocator().observe(maxID);
+
+            ByteBuffer count = segment(position,BinaryHelper.MAX_VARINT_BYTES);
+            input.setBuffer(count);
+            int connectionCount = input.readVarInt();
+            position = segmentStart(position) + count.position();
+            connectionIn = new int[connectionCount];
+            connectionInIndex = new int[connectionCount];
+            connectionOut = new int[connectionCount];
+            connectionOutIndex = new int[connectionCount];
+            int [] degree = new int[nodeCount+1];
+            for(int c=0;c<connectionCount;) {
+                ByteBuffer record = record(position);
+                position = recordEnd(position,record);
+                input.setBuffer(record);
+                int end = Math.min(connectionCount,c+BinaryHelper.CONNECTIONS_PER_BLOCK);
+                for(;c<end;++c) {
+                    connectionIn[c] = input.readVarInt()-1;
+                    connectionInIndex[c] = (connectionIn[c]>=0) ? input.readVarInt() : 0;
+                    connectionOut[c] = input.readVarInt()-1;
+                    connectionOutIndex[c] = (connectionOut[c]>=0) ? input.readVarInt() : 0;
+                    if(connectionIn[c]>=0) degree[connectionIn[c]+1]++;
+                    if(connectionOut[c]>=0 && connectionOut[c]!=connectionIn[c]) degree[connectionOut[c]+1]++;
+                }
+            }
+
+            adjacencyStart = degree;
+            for(int i=0;i<nodeCount;++i) adjacencyStart[i+1] += adjacencyStart[i];
+            adjacency = new int[adjacencyStart[nodeCount]];
+            int [] fill = new int[nodeCount];
+            for(int c=0;c<connectionCount;++c) {
+                int a = connectionIn[c];
+                int b = connectionOut[c];
+                if(a>=0) adjacency[adjacencyStart[a] + fill[a]++] = c;
+                if(b>=0 && b!=a) adjacency[adjacencyStart[b] + fill[b]++] = c;
+            }
+        } catch(IOException|RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a file saved by {@link BinaryHelper#saveGraph(NodeGraph, java.io.OutputStream)}.  No {@link Node}s are
+     * loaded yet.
+     * @param file the file to open.
+     * @param graph where to add each {@link Node} and {@link NodeConnection} as it is loaded.  The unique IDs in the
+     *              file are kept, so this should be empty.
+     * @return the open file.  Close it when finished.
+     * @throws IOException if the file cannot be read or is not a binary graph.
+     */
+    public static LazyGraphFile open(File file,NodeGraph graph) throws IOException {
+        return new LazyGraphFile(file,graph);
+    }
+
+    /**
+     * @return the {@link NodeGraph} that loaded {@link Node}s are added to.
+     */
+    public NodeGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of {@link Node}s in the file.
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * @return the number of {@link Node}s loaded so far.
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * @return true if every {@link Node} has been loaded.
+     */
+    public boolean isFullyLoaded() {
+        return loadedCount==nodes.length;
+    }
+
+    /**
+     * @return the area covered by every {@link Node} in the file, as they were saved.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * @param index the position of the {@link Node} in the file.
+     * @return the bounds of the {@link Node} as it was saved.
+     */
+    public Rectangle getNodeBounds(int index) {
+        return new Rectangle(boundsX[index],boundsY[index],boundsW[index],boundsH[index]);
+    }
+
+    /**
+     * @param index the position of the {@link Node} in the file.
+     * @return true if the {@link Node} has been loaded.
+     */
+    public boolean isLoaded(int index) {
+        return nodes[index]!=null;
+    }
+
+    /**
+     * Load one {@link Node} if it has not been loaded yet.
+     * @param index the position of the {@link Node} in the file.
+     * @return the {@link Node}.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public Node getNode(int index) throws UncheckedIOException {
+        Node n = nodes[index];
+        if(n!=null) return n;
+
+        try {
+            n = reader.readNode(record(offsets[index]));
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nodes[index] = n;
+        loadedCount++;
+        graph.add(n);
+
+        for(int k=adjacencyStart[index];k<adjacencyStart[index+1];++k) {
+            int c = adjacency[k];
+            if(connectionAdded.get(c)) continue;
+            Node in = (connectionIn[c]<0) ? null : nodes[connectionIn[c]];
+            Node out = (connectionOut[c]<0) ? null : nodes[connectionOut[c]];
+            if((in==null)!=(connectionIn[c]<0) || (out==null)!=(connectionOut[c]<0)) continue;
+            connectionAdded.set(c);
+            graph.add(JSONHelper.createNodeConnection(in,connectionInIndex[c],out,connectionOutIndex[c]));
+        }
+        return n;
+    }
+
+    /**
+     * Load every {@link Node} whose saved bounds touch an area, and every {@link Node} connected to them so their
+     * {@link NodeConnection}s can be seen.
+     * @param area the area to load, usually the visible part of the editor.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public void loadArea(Rectangle area) throws UncheckedIOException {
+        if(lastArea!=null && lastArea.contains(area)) return;
+        if(isFullyLoaded()) return;
+
+        List<Integer> visible = new ArrayList<>();
+        for(int i=0;i<nodes.length;++i) {
+            if(boundsX[i] < area.x+area.width && area.x < boundsX[i]+boundsW[i]
+                    && boundsY[i] < area.y+area.height && area.y < boundsY[i]+boundsH[i]) {
+                visible.add(i);
+            }
+        }
+        for(int i : visible) {
+            getNode(i);
+            for(int k=adjacencyStart[i];k<adjacencyStart[i+1];++k) {
+                int c = adjacency[k];
+                if(connectionIn[c]>=0) getNode(connectionIn[c]);
+                if(connectionOut[c]>=0) getNode(connectionOut[c]);
+            }
+        }
+        lastArea = new Rectangle(area);
+    }
+
+    /**
+     * Load every {@link Node} that has not been loaded yet.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public void loadAll() throws UncheckedIOException {
+        for(int i=0;i<nodes.length;++i) getNode(i);
+        // connections with no node at either end are not reached through a node.
+        for(int c=connectionAdded.nextClearBit(0);c<connectionIn.length;c=connectionAdded.nextClearBit(c+1)) {
+            connectionAdded.set(c);
+            graph.add(JSONHelper.createNodeConnection(null,0,null,0));
+        }
+    }
+
+    /**
+     * Release the file.  {@link Node}s already loaded stay in the graph.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        segmentStarts.clear();
+        channel.close();
+    }
+
+    /**
+     * @param position the file offset of a length prefixed record.
+     * @return a buffer over the record without its length, positioned at its start.
+     */
+    private ByteBuffer record(long position) throws IOException {
+        ByteBuffer buffer = segment(position,BinaryHelper.MAX_VARINT_BYTES);
+        input.setBuffer(buffer);
+        int length = input.readVarInt();
+        int prefix = buffer.position() - (int)(position - segmentStart(position));
+        buffer = segment(position,prefix+(long)length);
+        buffer.position(buffer.position()+prefix);
+        buffer.limit(buffer.position()+length);
+        return buffer;
+    }
+
+    /**
+     * @param position the file offset of a record given to {@link #record(long)}.
+     * @param record the buffer returned by {@link #record(long)}.
+     * @return the file offset of the next record.
+     */
+    private long recordEnd(long position,ByteBuffer record) {
+        return segmentStart(position) + record.limit();
+    }
+
+    private long segmentStart(long position) {
+        return segmentStarts.get(findSegment(position));
+    }
+
+    private int findSegment(long position) {
+        int lo=0, hi=segmentStarts.size()-1;
+        while(lo<hi) {
+            int mid = (lo+hi+1)>>>1;
+            if(segmentStarts.get(mid)<=position) lo=mid;
+            else hi=mid-1;
+        }
+        return lo;
+    }
+
+    /**
+     * Find or map a segment that holds some bytes.
+     * @param position the file offset of the first byte.
+     * @param needed how many bytes must follow, or fewer if the file ends first.
+     * @return a new view of the segment, positioned at the first byte.
+     */
+    private ByteBuffer segment(long position,long needed) throws IOException {
+        needed = Math.min(needed,fileSize-position);
+        if(!segments.isEmpty()) {
+            int i = findSegment(position);
+            long start = segmentStarts.get(i);
+            MappedByteBuffer s = segments.get(i);
+            if(start<=position && position+needed <= start+s.capacity()) {
+                return s.duplicate().position((int)(position-start));
+            }
+        }
+        if(needed>MAX_SEGMENT) throw new IOException("Record too large to map.");
+        MappedByteBuffer s = channel.map(FileChannel.MapMode.READ_ONLY,position,Math.min(MAX_SEGMENT,fileSize-position));
+        segments.add(s);
+        segmentStarts.add(position);
+        return s.duplicate();
+    }
+}
@@ -0,0 +1,73 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * A {@link NodeVariable} for {@link Number}s that stores a primitive {@code long}.  {@link #getLong()} and
+ * {@link #setLong(long)} never allocate, and a {@link NodeConnection} between two primitive variables moves the
+ * value without boxing.  {@link #getValue()} still returns a {@link Long} for everyone else.
+ */
+public class LongNodeVariable extends NodeVariable<Number> {
+    private long primitive;
+
+    protected LongNodeVariable(String name,long defaultValue,boolean hasInput,boolean hasOutput) {
+        super(name,Number.class,null,hasInput,hasOutput);
+        primitive = defaultValue;
+    }
+
+    @Override
+    public NodeVariable<Number> createInverse() {
+        return new LongNodeVariable(name,primitive,!hasInput,!hasOutput);
+    }
+
+    /**
+     * @return the value boxed as a {@link Long}.  A new box every time, so that a reader on another thread never sees
+     * a box of an older value.
+     */
+    @Override
+    public Number getValue() {
+        return primitive;
+    }
+
+    @Override
+    public void setValue(Object arg0) {
+        if(isValidType(arg0)) setLong(((Number)arg0).longValue());
+    }
+
+    @Override
+    public boolean acceptsValueOf(NodeVariable<?> source) {
+        if(source instanceof DoubleNodeVariable || source instanceof LongNodeVariable) return true;
+        return super.acceptsValueOf(source);
+    }
+
+    @Override
+    public void setValueFrom(NodeVariable<?> source) {
+        if(source instanceof DoubleNodeVariable || source instanceof LongNodeVariable) setLong(source.getLong());
+        else super.setValueFrom(source);
+    }
+
+    @Override
+    public boolean hasSameValueAs(NodeVariable<?> source) {
+        if(source instanceof DoubleNodeVariable || source instanceof LongNodeVariable) return primitive==source.getLong();
+        return super.hasSameValueAs(source);
+    }
+
+    @Override
+    public long getLong() {
+        return primitive;
+    }
+
+    @Override
+    public void setLong(long v) {
+        primitive = v;
+        setIsDirty(true);
+    }
+
+    @Override
+    public double getDouble() {
+        return primitive;
+    }
+
+    @Override
+    public void setDouble(double v) {
+        setLong((long)v);
+    }
+}
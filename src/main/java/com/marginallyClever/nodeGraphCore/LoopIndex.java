@@ -0,0 +1,295 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.*;
+
+/**
+ * {@link LoopIndex} knows which {@link Node}s of a {@link NodeGraph} are caught in a feedback loop.  A loop is a
+ * strongly connected component of the graph with more than one {@link Node}, or a single {@link Node} connected to
+ * itself.  Every {@link Node} of a loop shares the same {@link Set}.
+ * <p>The index is kept up to date one {@link NodeConnection} at a time.  Adding a connection searches downstream of
+ * it for a way back, and merges everything on the way into one loop.  Removing a connection from inside a loop
+ * splits only that loop.  A search that would visit more than {@link #SEARCH_LIMIT} {@link Node}s gives up and the
+ * whole index is rebuilt the next time it is asked a question, which costs no more than compiling a new
+ * {@link ExecutionPlan}.</p>
+ */
+class LoopIndex {
+    /**
+     * The most {@link Node}s one incremental search may visit.
+     */
+    static final int SEARCH_LIMIT = 4096;
+
+    private final NodeGraph graph;
+
+    /**
+     * The loop of each {@link Node} that is in one.  {@link Node}s not in a loop are not listed.
+     */
+    private final Map<Node,Set<Node>> loopOf = new HashMap<>();
+
+    /**
+     * true if {@link #loopOf} must be rebuilt before it can be trusted.
+     */
+    private boolean stale = false;
+
+    LoopIndex(NodeGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @param n the {@link Node} to check.
+     * @return the unmodifiable set of {@link Node}s in the same loop, or an empty set if n is not in a loop.
+     */
+    Set<Node> getLoop(Node n) {
+        if(stale) rebuild();
+        Set<Node> loop = loopOf.get(n);
+        return (loop==null) ? Collections.emptySet() : Collections.unmodifiableSet(loop);
+    }
+
+    /**
+     * @return every loop in the graph.
+     */
+    List<Set<Node>> getLoops() {
+        if(stale) rebuild();
+        Set<Set<Node>> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+        unique.addAll(loopOf.values());
+        List<Set<Node>> list = new ArrayList<>();
+        for(Set<Node> loop : unique) list.add(Collections.unmodifiableSet(loop));
+        return list;
+    }
+
+    /**
+     * @param from the upstream {@link Node} of a new {@link NodeConnection}.
+     * @param to the downstream {@link Node} of a new {@link NodeConnection}.
+     * @return true if connecting from to to would close a loop.
+     */
+    boolean wouldCreateLoop(Node from,Node to) {
+        if(from==to) return true;
+        if(!stale) {
+            Set<Node> loop = loopOf.get(from);
+            if(loop!=null && loop.contains(to)) return true;
+        }
+        return searchDownstream(to,from,Integer.MAX_VALUE) != null;
+    }
+
+    /**
+     * Called after a {@link NodeConnection} is added to the graph.
+     * @param c the new {@link NodeConnection}.
+     */
+    void onConnect(NodeConnection c) {
+        Node from = c.getInNode();
+        Node to = c.getOutNode();
+        if(stale || from==null || to==null) return;
+
+        Set<Node> loop = loopOf.get(from);
+        if(loop!=null && loop.contains(to)) return;
+        if(from==to) {
+            assign(Collections.singleton(from));
+            return;
+        }
+
+        Set<Node> downstream = searchDownstream(to,from,SEARCH_LIMIT);
+        if(downstream==null) return;
+        if(downstream.size()>SEARCH_LIMIT) {
+            stale = true;
+            return;
+        }
+
+        // the new loop is everything downstream of to that can also reach from.
+        Set<Node> merged = new HashSet<>();
+        Deque<Node> work = new ArrayDeque<>();
+        merged.add(from);
+        work.add(from);
+        while(!work.isEmpty()) {
+            Node n = work.poll();
+            for(NodeConnection in : graph.getConnectionsTo(n)) {
+                Node up = in.getInNode();
+                if(downstream.contains(up) && merged.add(up)) work.add(up);
+            }
+        }
+        assign(merged);
+    }
+
+    /**
+     * Called after {@link NodeConnection}s are removed from the graph.  Each loop that lost an inner connection is
+     * split again.
+     * @param removed the {@link NodeConnection}s that were removed.
+     */
+    void onDisconnect(Collection<NodeConnection> removed) {
+        if(stale) return;
+        Set<Set<Node>> broken = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(NodeConnection c : removed) {
+            Set<Node> loop = loopOf.get(c.getInNode());
+            if(loop!=null && loop.contains(c.getOutNode())) broken.add(loop);
+        }
+        for(Set<Node> loop : broken) {
+            for(Node n : loop) loopOf.remove(n);
+            findLoops(new ArrayList<>(loop));
+        }
+    }
+
+    /**
+     * Called after a {@link Node} and its {@link NodeConnection}s are removed from the graph.
+     * @param n the {@link Node} that was removed.
+     */
+    void onRemove(Node n) {
+        loopOf.remove(n);
+    }
+
+    /**
+     * Forget everything and rebuild the index the next time it is asked a question.
+     */
+    void invalidate() {
+        loopOf.clear();
+        stale = true;
+    }
+
+    /**
+     * Empty the index.
+     */
+    void clear() {
+        loopOf.clear();
+        stale = false;
+    }
+
+    private void rebuild() {
+        loopOf.clear();
+        stale = false;
+        findLoops(graph.getNodes());
+    }
+
+    /**
+     * Find the loops among some {@link Node}s, following only the {@link NodeConnection}s between them, and add them
+     * to the index.
+     * @param nodes the {@link Node}s to search.
+     */
+    private void findLoops(List<Node> nodes) {
+        Map<Node,Integer> index = new IdentityHashMap<>();
+        for(int i=0;i<nodes.size();++i) index.putIfAbsent(nodes.get(i),i);
+
+        int [][] next = new int[nodes.size()][];
+        boolean [] selfLoop = new boolean[nodes.size()];
+        for(int i=0;i<nodes.size();++i) {
+            List<NodeConnection> out = graph.getConnectionsFrom(nodes.get(i));
+            int [] list = new int[out.size()];
+            int count=0;
+            for(NodeConnection c : out) {
+                Integer j = index.get(c.getOutNode());
+                if(j==null) continue;
+                if(j==i) selfLoop[i]=true;
+                list[count++]=j;
+            }
+            next[i] = Arrays.copyOf(list,count);
+        }
+
+        int [] component = findComponents(next);
+        int [] size = new int[nodes.size()];
+        for(int c : component) size[c]++;
+        List<Set<Node>> loops = new ArrayList<>();
+        for(int i=0;i<nodes.size();++i) loops.add(null);
+        for(int i=0;i<nodes.size();++i) {
+            int c = component[i];
+            if(size[c]<2 && !selfLoop[i]) continue;
+            if(loops.get(c)==null) loops.set(c,new HashSet<>());
+            loops.get(c).add(nodes.get(i));
+        }
+        for(Set<Node> loop : loops) {
+            if(loop!=null) assign(loop);
+        }
+    }
+
+    /**
+     * Give every {@link Node} of a loop the same set, replacing any smaller loops they were in.
+     * @param members the {@link Node}s of the loop.
+     */
+    private void assign(Set<Node> members) {
+        Set<Node> loop = new HashSet<>(members);
+        for(Node n : loop) loopOf.put(n,loop);
+    }
+
+    /**
+     * Breadth first search downstream of start for target.
+     * @param start the first {@link Node} to visit.
+     * @param target the {@link Node} to find.
+     * @param limit give up after visiting this many {@link Node}s.
+     * @return every {@link Node} visited if target was found, null if it was not found, or a set larger than limit if
+     * the search gave up.
+     */
+    private Set<Node> searchDownstream(Node start,Node target,int limit) {
+        Set<Node> visited = new HashSet<>();
+        Deque<Node> work = new ArrayDeque<>();
+        visited.add(start);
+        work.add(start);
+        boolean found = false;
+        while(!work.isEmpty()) {
+            Node n = work.poll();
+            if(n==target) found = true;
+            for(NodeConnection out : graph.getConnectionsFrom(n)) {
+                Node down = out.getOutNode();
+                if(visited.add(down)) {
+                    if(visited.size()>limit) return visited;
+                    work.add(down);
+                }
+            }
+        }
+        return found ? visited : null;
+    }
+
+    /**
+     * Finds the strongly connected components of a directed graph with Tarjan's algorithm.  The search uses its own
+     * stack so very deep graphs do not overflow the call stack.
+     * @param next {@code next[i]} lists the vertexes that vertex i connects to.
+     * @return the component of each vertex.  Components are numbered so that every connection between two different
+     * components goes from a higher number to a lower number.
+     */
+    static int[] findComponents(int[][] next) {
+        int n = next.length;
+        int [] component = new int[n];
+        int [] order = new int[n];
+        int [] low = new int[n];
+        int [] edge = new int[n];
+        int [] callStack = new int[n];
+        int [] stack = new int[n];
+        boolean [] onStack = new boolean[n];
+        Arrays.fill(order,-1);
+        int counter=0, stackSize=0, components=0;
+
+        for(int root=0;root<n;++root) {
+            if(order[root]>=0) continue;
+            int depth=0;
+            callStack[depth++]=root;
+            order[root]=low[root]=counter++;
+            stack[stackSize++]=root;
+            onStack[root]=true;
+
+            while(depth>0) {
+                int v = callStack[depth-1];
+                if(edge[v]<next[v].length) {
+                    int w = next[v][edge[v]++];
+                    if(order[w]<0) {
+                        order[w]=low[w]=counter++;
+                        stack[stackSize++]=w;
+                        onStack[w]=true;
+                        callStack[depth++]=w;
+                    } else if(onStack[w]) {
+                        low[v] = Math.min(low[v],order[w]);
+                    }
+                    continue;
+                }
+                depth--;
+                if(depth>0) {
+                    int parent = callStack[depth-1];
+                    low[parent] = Math.min(low[parent],low[v]);
+                }
+                if(low[v]==order[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w]=false;
+                        component[w]=components;
+                    } while(w!=v);
+                    components++;
+                }
+            }
+        }
+        return component;
+    }
+}
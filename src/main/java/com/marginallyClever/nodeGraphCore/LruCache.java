@@ -0,0 +1,96 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A map that holds at most {@link #getCapacity()} entries and forgets the least recently used one first.  Counts
+ * hits, misses and evictions.  Safe to use from any thread.  Used by {@link MemoCache} and {@link SubgraphCache}.
+ * @param <K> the type of key.
+ * @param <V> the type of value.
+ */
+class LruCache<K,V> {
+    private final LinkedHashMap<K,V> entries = new LinkedHashMap<>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+            if(size()<=capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    };
+
+    private int capacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    LruCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * @param key the key.
+     * @return the value, or null.  Counted as a hit or a miss.
+     */
+    V get(K key) {
+        V value;
+        synchronized(this) {
+            value = entries.get(key);
+        }
+        if(value!=null) hits.increment();
+        else misses.increment();
+        return value;
+    }
+
+    synchronized void put(K key,V value) {
+        entries.put(key,value);
+    }
+
+    /**
+     * @param capacity the most entries to keep.  Entries over the new capacity are forgotten now.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    synchronized void setCapacity(int capacity) throws IllegalArgumentException {
+        if(capacity<0) throw new IllegalArgumentException("capacity must be >= 0");
+        this.capacity = capacity;
+        Iterator<K> i = entries.keySet().iterator();
+        while(entries.size()>capacity) {
+            i.next();
+            i.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Forget every entry and reset the counters.
+     */
+    synchronized void clear() {
+        entries.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+}
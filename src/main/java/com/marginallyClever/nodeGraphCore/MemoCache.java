@@ -0,0 +1,167 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MemoCache} remembers the outputs of one class of {@link PureNode} for the most recently used input values.
+ * When a {@link NodeGraph} with {@link NodeGraph#setMemoizePureNodes(boolean)} on is about to update a
+ * {@link PureNode} whose inputs match an earlier update of any {@link Node} of the same class, in any graph, the
+ * remembered outputs are published and {@link Node#update()} is skipped.
+ * <p>There is one cache per class, shared by every graph and every thread.  Each cache holds at most
+ * {@link #getCapacity()} entries and forgets the least recently used one first.</p>
+ * <p>A {@link Node} is only memoized if it has at least one input and every input value is null or of a class that
+ * overrides {@link Object#equals(Object)}.  Values are copied with {@link GraphCopier#copyValue(Object)} going in
+ * and coming out, so changing a value later does not change the cache.</p>
+ */
+public class MemoCache {
+    /**
+     * The capacity of each new cache.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Map<Class<?>,MemoCache> caches = new ConcurrentHashMap<>();
+
+    private final LruCache<ValueKey,Object[]> entries = new LruCache<>(DEFAULT_CAPACITY);
+
+    private MemoCache() {
+        super();
+    }
+
+    /**
+     * @param type a class of {@link Node}.
+     * @return the cache of that class.
+     */
+    public static MemoCache forClass(Class<? extends Node> type) {
+        MemoCache c = caches.get(type);
+        return (c!=null) ? c : caches.computeIfAbsent(type,(k)->new MemoCache());
+    }
+
+    /**
+     * Empty every cache and reset the counters.
+     */
+    public static void clearAll() {
+        for(MemoCache c : caches.values()) c.clear();
+    }
+
+    /**
+     * Update a dirty {@link Node} from the cache if its inputs have been seen before.  Otherwise run
+     * {@link Node#update()} and remember the outputs.
+     * @param n the {@link Node}, which must implement {@link PureNode}.
+     */
+    static void update(Node n) {
+        ValueKey key = keyOf(n);
+        if(key==null) {
+            n.update();
+            return;
+        }
+        MemoCache cache = forClass(n.getClass());
+        Object[] outputs = cache.entries.get(key);
+        if(outputs!=null) {
+            publish(n,outputs);
+            n.cleanAllInputs();
+            return;
+        }
+        n.update();
+        cache.entries.put(key,collect(n));
+    }
+
+    /**
+     * @param n the {@link Node}.
+     * @return the key for the current inputs of the {@link Node}, or null if they can not be compared.
+     */
+    private static ValueKey keyOf(Node n) {
+        List<NodeVariable<?>> variables = n.getVariables();
+        int count = 0;
+        for(NodeVariable<?> v : variables) {
+            if(!v.getHasInput()) continue;
+            if(!ValueKey.canCompare(v.getValue())) return null;
+            count++;
+        }
+        if(count==0) return null;
+
+        Object[] values = new Object[count];
+        int i = 0;
+        for(NodeVariable<?> v : variables) {
+            if(v.getHasInput()) values[i++] = GraphCopier.copyValue(v.getValue());
+        }
+        return new ValueKey(values);
+    }
+
+    private static Object[] collect(Node n) {
+        List<NodeVariable<?>> variables = n.getVariables();
+        int count = 0;
+        for(NodeVariable<?> v : variables) {
+            if(v.getHasOutput()) count++;
+        }
+        Object[] outputs = new Object[count];
+        int i = 0;
+        for(NodeVariable<?> v : variables) {
+            if(v.getHasOutput()) outputs[i++] = GraphCopier.copyValue(v.getValue());
+        }
+        return outputs;
+    }
+
+    private static void publish(Node n,Object[] outputs) {
+        int i = 0;
+        for(NodeVariable<?> v : n.getVariables()) {
+            if(v.getHasOutput()) v.setValue(GraphCopier.copyValue(outputs[i++]));
+        }
+    }
+
+    /**
+     * @param capacity the most entries to keep.  Entries over the new capacity are forgotten now.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    public void setCapacity(int capacity) throws IllegalArgumentException {
+        entries.setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return entries.getCapacity();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of updates skipped because the outputs were in the cache.
+     */
+    public long getHitCount() {
+        return entries.getHitCount();
+    }
+
+    /**
+     * @return the number of updates that had to run {@link Node#update()}.
+     */
+    public long getMissCount() {
+        return entries.getMissCount();
+    }
+
+    /**
+     * @return the number of entries forgotten to stay within the capacity.
+     */
+    public long getEvictionCount() {
+        return entries.getEvictionCount();
+    }
+
+    /**
+     * Forget every entry and reset the counters.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MemoCache{" +
+                "size=" + size() +
+                ", capacity=" + getCapacity() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
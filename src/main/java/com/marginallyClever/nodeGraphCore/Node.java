@@ -19,11 +19,16 @@ public abstract class Node {
     public static final int TITLE_HEIGHT = 25;
 
     /**
-     * This is used to ensure all {@link Node}s in a
+     * Hands out the provisional IDs of {@link Node}s that are not in a graph yet.
      */
-    private static int uniqueIDSource=0;
+    private static final UniqueIDAllocator provisionalIDs = new UniqueIDAllocator();
 
-    private int uniqueID;
+    /**
+     * Unique within the {@link NodeGraph} that holds this {@link Node}.  A new {@link Node} has a negative provisional
+     * ID, unique among all {@link Node}s made in this JVM, until it is added to a graph, which replaces it with a new
+     * ID from its {@link UniqueIDAllocator}.
+     */
+    private long uniqueID;
 
     private String name;
 
@@ -33,9 +38,26 @@ public abstract class Node {
 
     private final List<NodeVariable<?>> variables;
 
+    /**
+     * The {@link NodeGraph} that is told when a {@link NodeVariable} of this {@link Node} changes.  null if this
+     * {@link Node} has not been added to a graph.
+     */
+    private NodeGraph parentGraph;
+
+    /**
+     * The index of this {@link Node} in the parent graph's {@link ExecutionPlan}.
+     */
+    int planIndex = -1;
+
+    /**
+     * true while the parent graph is running {@link #update()}.  Changes made during an update are not reported, the
+     * graph already knows.
+     */
+    boolean updating;
+
     public Node(String name) {
         super();
-        this.uniqueID = ++uniqueIDSource;
+        this.uniqueID = -provisionalIDs.next();
         this.name = name;
         this.label = "";
         this.rectangle = new Rectangle(0,0,150,50);
@@ -49,24 +71,37 @@ public abstract class Node {
      */
     public abstract Node create();
 
-    public static void setUniqueIDSource(int index) {
-        uniqueIDSource=index;
-    }
+    /**
+     * @param index ignored.
+     * @deprecated IDs are handed out by each {@link NodeGraph}.  Use {@link NodeGraph#getUniqueIDAllocator()}.
+     */
+    @Deprecated
+    public static void setUniqueIDSource(int index) {}
 
+    /**
+     * @return 0.
+     * @deprecated IDs are handed out by each {@link NodeGraph}.  Use {@link NodeGraph#getUniqueIDAllocator()}.
+     */
+    @Deprecated
     public static int getUniqueIDSource() {
-        return uniqueIDSource;
+        return 0;
     }
 
-    public void setUniqueID(int i) {
+    public void setUniqueID(long i) {
         uniqueID=i;
+        if(parentGraph!=null) {
+            parentGraph.onUniqueIDChanged(i);
+            parentGraph.onNodeChanged(this);
+        }
     }
 
-    public int getUniqueID() {
+    public long getUniqueID() {
         return uniqueID;
     }
 
     public void setName(String name) {
         this.name = name;
+        onChanged();
     }
 
     public List<NodeVariable<?>> getVariables() {
@@ -75,6 +110,7 @@ public abstract class Node {
 
     public void setRectangle(Rectangle rectangle) {
         this.rectangle = rectangle;
+        onChanged();
     }
 
     public Rectangle getRectangle() {
@@ -130,6 +166,42 @@ public abstract class Node {
         return false;
     }
 
+    /**
+     * Check if any input variables are dirty.
+     * @return true if any input variables are dirty.
+     */
+    boolean hasDirtyInputs() {
+        for(NodeVariable<?> v : variables) {
+            if (v.getHasInput() && v.getIsDirty()) return true;
+        }
+        return false;
+    }
+
+    NodeGraph getParentGraph() {
+        return parentGraph;
+    }
+
+    void setParentGraph(NodeGraph graph) {
+        parentGraph = graph;
+    }
+
+    /**
+     * Called by a {@link NodeVariable} of this {@link Node} when it becomes dirty.  Tells the parent graph that this
+     * {@link Node} changed, and that it needs to be visited on the next {@link NodeGraph#update()}.
+     */
+    void onVariableChanged() {
+        if(parentGraph==null) return;
+        if(!updating) parentGraph.markDirty(this);
+        parentGraph.onNodeChanged(this);
+    }
+
+    /**
+     * Tells the parent graph that something other than a {@link NodeVariable} changed.
+     */
+    private void onChanged() {
+        if(parentGraph!=null) parentGraph.onNodeChanged(this);
+    }
+
     /**
      * Makes all input variables not dirty.
      */
@@ -147,10 +219,14 @@ public abstract class Node {
 
     public void addVariable(NodeVariable v) {
         variables.add(v);
+        v.owner = this;
+        onChanged();
     }
 
     public void removeVariable(NodeVariable v) {
         variables.remove(v);
+        if(v.owner==this) v.owner = null;
+        onChanged();
     }
 
     public int getNumVariables() {
@@ -200,6 +276,7 @@ public abstract class Node {
 
     public void setLabel(String str) {
         label=str;
+        onChanged();
     }
 
     /**
@@ -209,11 +286,13 @@ public abstract class Node {
     public void setPosition(Point point) {
         rectangle.x=point.x;
         rectangle.y=point.y;
+        onChanged();
     }
 
     public void moveRelative(int dx, int dy) {
         rectangle.x += dx;
         rectangle.y += dy;
+        onChanged();
     }
 
 
@@ -19,6 +19,12 @@ public class NodeConnection {
     private Node outNode;
     private int outVariableIndex=-1;
 
+    /**
+     * The number of values sent while {@link NodeGraph#setMetricsEnabled(boolean)} was on.  Only changed on the
+     * thread that runs {@link NodeGraph#update()}.
+     */
+    long transfers;
+
     /**
      * public default constructor.
      */
@@ -48,15 +54,33 @@ public class NodeConnection {
     }
 
     /**
-     * Send the value of upstream variables to downstream variables if the upstream is dirty.
+     * Send the value of upstream variables to downstream variables if the upstream is dirty.  Primitive variables
+     * are copied without boxing.
+     * @return true if a value was sent.
      */
-    public void applyIfDirty() {
-        if(!isValidDataType()) return;
+    public boolean applyIfDirty() {
+        if(!isValidDataType()) return false;
 
         NodeVariable<?> in = getInputVariable();
-        if(in.getIsDirty()) {
-            getOutputVariable().setValue(in.getValue());
-        }
+        if(!in.getIsDirty()) return false;
+        getOutputVariable().setValueFrom(in);
+        return true;
+    }
+
+    /**
+     * Like {@link #applyIfDirty()}, but nothing is sent if the downstream variable already has the same value.  Used
+     * to tell when a feedback loop has settled.
+     * @return true if a value was sent.
+     */
+    public boolean applyIfChanged() {
+        if(!isValidDataType()) return false;
+
+        NodeVariable<?> in = getInputVariable();
+        if(!in.getIsDirty()) return false;
+        NodeVariable<?> out = getOutputVariable();
+        if(out.hasSameValueAs(in)) return false;
+        out.setValueFrom(in);
+        return true;
     }
 
     /**
@@ -66,7 +90,7 @@ public class NodeConnection {
         if(!isValidDataType()) return;
 
         NodeVariable<?> in = getInputVariable();
-        getOutputVariable().setValue(in.getValue());
+        getOutputVariable().setValueFrom(in);
     }
 
     /**
@@ -76,7 +100,7 @@ public class NodeConnection {
         if(!isInputValid() || !isOutputValid()) return false;
         NodeVariable<?> in = getInputVariable();
         NodeVariable<?> out = getOutputVariable();
-        return out.isValidType(in.getValue());
+        return out.acceptsValueOf(in);
     }
 
     /**
@@ -98,12 +122,12 @@ public class NodeConnection {
      * @throws IndexOutOfBoundsException if the requested index is invalid.
      * @throws NullPointerException if the output does not exist.
      */
-    private NodeVariable<?> getOutputVariable() throws NullPointerException, IndexOutOfBoundsException {
+    NodeVariable<?> getOutputVariable() throws NullPointerException, IndexOutOfBoundsException {
         if(outNode==null) throw new NullPointerException("output does not exist");
         return outNode.getVariable(outVariableIndex);
     }
 
-    private NodeVariable<?> getInputVariable() throws NullPointerException, IndexOutOfBoundsException {
+    NodeVariable<?> getInputVariable() throws NullPointerException, IndexOutOfBoundsException {
         if(inNode==null) throw new NullPointerException("output does not exist");
         return inNode.getVariable(inVariableIndex);
     }
@@ -1,24 +1,58 @@
 package com.marginallyClever.nodeGraphCore;
 
-import java.util.HashMap;
+import java.lang.reflect.Constructor;
 import java.util.Map;
-import java.util.Set;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Maintains a map of {@link Node}s and their names.  Can create nodes on request, by name.
  * Can deliver a list of names.
+ * <p>Only a {@link Supplier} or a class name is kept for each name, so no {@link Node} is made until a graph uses it.
+ * A {@link Node} registered by class name is not even loaded until then.  Every {@link NodeRegistry} found by {@link ServiceLoader} is registered the first time the
+ * factory is used.  The factory is safe to use from any thread.</p>
  */
 public class NodeFactory {
-    private static Map<String,Node> nodeRegistry = new HashMap<>();
+    private static final Map<String,Supplier<Node>> nodeRegistry = new ConcurrentHashMap<>();
+
+    private static volatile boolean servicesLoaded = false;
 
     /**
      * Does not allow nodes to be registered more than once.
+     * @param name the name of the {@link Node}, as returned by {@link Node#getName()}.
+     * @param supplier makes a new instance of the {@link Node}.
+     */
+    public static void registerNode(String name,Supplier<Node> supplier) {
+        nodeRegistry.putIfAbsent(name,supplier);
+    }
+
+    /**
+     * Does not allow nodes to be registered more than once.  The class is not loaded until the first {@link Node} is
+     * made.  It must have a public constructor with no parameters.
+     * @param name the name of the {@link Node}, as returned by {@link Node#getName()}.
+     * @param className the binary name of the class of the {@link Node}.
+     * @param loader the {@link ClassLoader} that will load the class.
+     */
+    public static void registerNode(String name,String className,ClassLoader loader) {
+        registerNode(name,new ClassSupplier(className,loader));
+    }
+
+    /**
+     * Does not allow nodes to be registered more than once.  Prefer {@link #registerNode(String, Supplier)}, which
+     * does not need a {@link Node} to be made first.
      * @param n one instance of the node.
      */
     public static void registerNode(Node n) {
-        if(!nodeRegistry.containsKey(n.getName())) {
-            nodeRegistry.put(n.getName(),n);
-        }
+        registerNode(n.getName(),n::create);
+    }
+
+    /**
+     * Forget a registered {@link Node}.  Graphs that already hold one keep it.
+     * @param name the name of the {@link Node}.
+     */
+    public static void unregisterNode(String name) {
+        nodeRegistry.remove(name);
     }
 
     /**
@@ -28,8 +62,10 @@ public class NodeFactory {
      * @throws IllegalArgumentException if the matchine {@link Node} cannot be found.
      */
     public static Node createNode(String name) throws IllegalArgumentException {
-        if(nodeRegistry.containsKey(name)) {
-            return nodeRegistry.get(name).create();
+        loadServices();
+        Supplier<Node> supplier = (name==null) ? null : nodeRegistry.get(name);
+        if(supplier!=null) {
+            return supplier.get();
         }
         throw new IllegalArgumentException("Node type not found: "+name);
     }
@@ -39,7 +75,46 @@ public class NodeFactory {
      * @return an array containing the unique names of every {@link Node} registered.
      */
     public static String [] getNames() {
-        Set<String> list = nodeRegistry.keySet();
-        return list.stream().sorted().toArray(String[]::new);
+        loadServices();
+        return nodeRegistry.keySet().stream().sorted().toArray(String[]::new);
+    }
+
+    private static void loadServices() {
+        if(servicesLoaded) return;
+        synchronized(NodeFactory.class) {
+            if(servicesLoaded) return;
+            for(NodeRegistry r : ServiceLoader.load(NodeRegistry.class)) {
+                r.register();
+            }
+            servicesLoaded = true;
+        }
+    }
+
+    /**
+     * Loads a class of {@link Node} the first time it is asked for one.
+     */
+    private static class ClassSupplier implements Supplier<Node> {
+        private final String className;
+        private final ClassLoader loader;
+        private volatile Constructor<? extends Node> constructor;
+
+        ClassSupplier(String className,ClassLoader loader) {
+            this.className = className;
+            this.loader = loader;
+        }
+
+        @Override
+        public Node get() {
+            try {
+                Constructor<? extends Node> c = constructor;
+                if(c==null) {
+                    c = Class.forName(className,true,loader).asSubclass(Node.class).getConstructor();
+                    constructor = c;
+                }
+                return c.newInstance();
+            } catch(ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Node type can not be made: "+className,e);
+            }
+        }
     }
 }
@@ -2,21 +2,179 @@ package com.marginallyClever.nodeGraphCore;
 
 import com.google.gson.annotations.JsonAdapter;
 import com.marginallyClever.nodeGraphCore.builtInNodes.math.Add;
+import com.marginallyClever.nodeGraphCore.jfr.GraphUpdateEvent;
 import com.marginallyClever.nodeGraphCore.json.NodeGraphJsonAdapter;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
+import java.util.*;
 import java.util.List;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
 /**
  * {@link NodeGraph} contains the {@link Node}s, and {@link NodeConnection}s
  */
 @JsonAdapter(NodeGraphJsonAdapter.class)
 public class NodeGraph {
-    private final List<Node> nodes = new ArrayList<>();
-    private final List<NodeConnection> connections = new ArrayList<>();
+    private final TrackedList<Node> nodes = new TrackedList<>();
+    private final TrackedList<NodeConnection> connections = new TrackedList<>();
+
+    /**
+     * For each {@link Node}, the {@link NodeConnection}s leaving it.
+     */
+    private final Map<Node,List<NodeConnection>> outbound = new HashMap<>();
+
+    /**
+     * For each {@link Node}, the {@link NodeConnection}s arriving at it.
+     */
+    private final Map<Node,List<NodeConnection>> inbound = new HashMap<>();
+
+    /**
+     * The first {@link NodeConnection} added for each pair of end points.  Used to find duplicates.
+     */
+    private final Map<NodeConnection,NodeConnection> byEndPoints = new HashMap<>();
+
+    /**
+     * Finds {@link Node}s by {@link Node#getUniqueID()}.  If two {@link Node}s share an ID the first one added wins.
+     */
+    private final Map<Long,Node> byUniqueID = new HashMap<>();
+
+    /**
+     * Hands out the IDs of {@link Node}s added to this graph.
+     */
+    private final UniqueIDAllocator ids = new UniqueIDAllocator();
+
+    /**
+     * Which {@link Node}s are caught in a feedback loop.
+     */
+    private final LoopIndex loops = new LoopIndex(this);
+
+    /**
+     * The most times one feedback loop is run in one {@link #update()}.
+     */
+    private int maxLoopIterations = 100;
+
+    /**
+     * true if {@link #byUniqueID} must be rebuilt before it can be trusted.
+     */
+    private boolean uniqueIDIndexIsStale = false;
+
+    /**
+     * true if two {@link Node}s in this graph have been seen with the same ID.
+     */
+    private boolean hasDuplicateIDs = false;
+
+    /**
+     * The lists handed out by {@link #getNodes()} and {@link #getConnections()}.
+     */
+    private final List<Node> nodesEditable = new EditableView<>(nodes,this::adoptDirectly,this::onEditedDirectly);
+    private final List<NodeConnection> connectionsEditable =
+            new EditableView<>(connections,(c)->{},this::onEditedDirectly);
+
+    /**
+     * true if {@link #nodes} or {@link #connections} were changed through {@link #getNodes()} or
+     * {@link #getConnections()} and every index must be rebuilt before it can be trusted.
+     */
+    private boolean indexesAreStale = false;
+
+    /**
+     * The cached order of evaluation.  null when the topology has changed and the plan must be rebuilt.
+     */
+    private ExecutionPlan plan;
+
+    /**
+     * Runs independent {@link Node}s in parallel.  null to run sequentially.
+     */
+    private ForkJoinPool executor;
+
+    /**
+     * true if {@link #update()} should try to compile the graph.  See {@link #setCompilePureNodes(boolean)}.
+     */
+    private boolean compilePureNodes = false;
+
+    /**
+     * The compiled form of {@link #plan}, or null if the graph is interpreted.
+     */
+    private CompiledGraph compiled;
+
+    /**
+     * true if {@link PureNode}s should be updated through their {@link MemoCache}.  See
+     * {@link #setMemoizePureNodes(boolean)}.
+     */
+    private volatile boolean memoizePureNodes = false;
+
+    /**
+     * Shared by every {@link NodeGraph} that has not chosen its own with {@link #setAsyncExecutor(Executor)}.
+     */
+    private static final ExecutorService DEFAULT_ASYNC_EXECUTOR = createDefaultAsyncExecutor();
+
+    /**
+     * Runs the slow work of {@link AsyncNode}s.
+     */
+    private Executor asyncExecutor = DEFAULT_ASYNC_EXECUTOR;
+
+    /**
+     * The latest unpublished work of each {@link AsyncNode}.  Only touched on the graph's thread.
+     */
+    private final Map<Node,AsyncWork> inFlight = new IdentityHashMap<>();
+
+    /**
+     * Work that has completed since the last {@link #update()}.  Filled from any thread.
+     */
+    private final Queue<AsyncWork> finished = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Called from the worker thread each time the work of an {@link AsyncNode} completes.
+     */
+    private volatile Runnable asyncListener;
+
+    /**
+     * What {@link #update()} has measured.  See {@link #setMetricsEnabled(boolean)}.
+     */
+    private final ExecutionMetrics metrics = new ExecutionMetrics(this);
+
+    /**
+     * true if {@link #update()} should record {@link #metrics}.
+     */
+    private volatile boolean metricsEnabled = false;
+
+    /**
+     * The persistent copy of this graph returned by {@link #snapshot()}.  null until the first snapshot.
+     */
+    private SnapshotIndex snapshots;
+
+    /**
+     * true if this graph may be shared between threads.  See {@link #setConcurrent(boolean)}.
+     */
+    private volatile boolean concurrent = false;
+
+    /**
+     * Serializes structural changes and {@link #update()} while {@link #concurrent}.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The thread holding the write lock, so that it can call back into the graph without waiting on itself.  Only
+     * ever compared to the current thread, which always sees its own writes.
+     */
+    private Thread writer;
+
+    /**
+     * Immutable copies of {@link #nodes} and {@link #connections} handed out while {@link #concurrent}.  null after
+     * a structural change until they are asked for again.
+     */
+    private volatile List<Node> nodesView;
+    private volatile List<NodeConnection> connectionsView;
+
+    /**
+     * {@link Node}s that became dirty on another thread while {@link #concurrent}.  The next {@link #update()} adds
+     * them to the plan.
+     */
+    private final Queue<Node> dirtyFromOtherThreads = new ConcurrentLinkedQueue<>();
 
     /**
      * Default constructor.  Creates an empty {@link NodeGraph}.
@@ -27,42 +185,591 @@ public class NodeGraph {
 
     /**
      * <ul>
-     * <li>Updates only dirty nodes.</li>
-     * <li>Transmits dirty node outputs to connected inputs.</li>
+     * <li>Updates only dirty nodes, upstream nodes first.</li>
+     * <li>Transmits dirty node outputs to connected inputs as soon as each node is done.</li>
      * <li>Sets all outputs to clean.</li>
      * </ul>
-     * The method does not analyze the directed graph to run nodes in an "intelligent" way.
+     * Only {@link Node}s that changed since the last update, and the {@link Node}s downstream of them, are visited.
+     * A {@link Node} reports a change when one of its {@link NodeVariable}s becomes dirty, but only to the first
+     * {@link NodeGraph} it was added to.
+     * Nodes are visited in topological order (see {@link #getExecutionOrder()}) so a change at the start of a chain
+     * reaches the end of the chain in a single call.  If an executor has been set with
+     * {@link #setExecutor(ForkJoinPool)} then independent nodes are updated in parallel.  If the graph has been
+     * compiled (see {@link #setCompilePureNodes(boolean)}) then any change runs the whole compiled program instead.
+     * {@link AsyncNode}s are started and not waited for.  Their results are published, and their downstream
+     * {@link Node}s updated, by the first call to update() after the work completes.
+     * While metrics are enabled (see {@link #setMetricsEnabled(boolean)}) a compiled graph records every
+     * {@link Node} and {@link NodeConnection} of the program each time it runs.  Each call is recorded as a
+     * {@link GraphUpdateEvent} for Java Flight Recorder.  While {@link #isConcurrent()} an update waits for any structural change in progress, and structural
+     * changes wait for the update to finish.
      */
     public void update() {
-        for(Node n : nodes) n.updateIfNotDirty();
-        for(NodeConnection c : connections) c.applyIfDirty();
-        for(Node n : nodes) n.cleanAllOutputs();
+        long stamp = lockForWriting();
+        try {
+            GraphUpdateEvent event = new GraphUpdateEvent();
+            event.begin();
+            ExecutionPlan p = getExecutionPlan();
+            Node dirty;
+            while((dirty = dirtyFromOtherThreads.poll()) != null) p.markDirty(dirty);
+            if(concurrent) {
+                // readers should not have to wait for this update.
+                if(nodesView==null) nodesView = List.copyOf(nodes);
+                if(connectionsView==null) connectionsView = List.copyOf(connections);
+            }
+            publishFinishedAsyncWork();
+            boolean runCompiled = compiled!=null;
+            if(!runCompiled) {
+                p.run(executor);
+            } else if(p.hasPendingWork()) {
+                compiled.run(getActiveMetrics());
+                p.clearPending();
+            }
+            if(event.shouldCommit()) {
+                event.setGraph(this,runCompiled);
+                event.commit();
+            }
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * Publish the results of every {@link AsyncNode} whose work has completed and transmit its outputs.  Results that
+     * were replaced by a newer call to {@link AsyncNode#updateAsync(Executor)} are dropped.
+     */
+    private void publishFinishedAsyncWork() {
+        AsyncWork w;
+        while((w = finished.poll()) != null) {
+            Node n = w.node;
+            if(inFlight.get(n) != w) continue;
+            inFlight.remove(n);
+
+            Runnable publish;
+            try {
+                publish = w.result.join();
+            } catch(CompletionException | CancellationException e) {
+                e.printStackTrace();
+                continue;
+            }
+            n.updating = true;
+            try {
+                publish.run();
+            } finally {
+                n.updating = false;
+            }
+            ExecutionMetrics m = getActiveMetrics();
+            for(NodeConnection c : getConnectionsFrom(n)) ExecutionPlan.apply(c,m);
+            n.cleanAllOutputs();
+        }
+    }
+
+    /**
+     * Start the work of an {@link AsyncNode}.  Called by the {@link ExecutionPlan} on the graph's thread.
+     * @param n the {@link Node}, which must implement {@link AsyncNode}.
+     */
+    void startAsync(Node n) {
+        AsyncWork w = new AsyncWork(n,((AsyncNode)n).updateAsync(asyncExecutor));
+        inFlight.put(n,w);
+        w.notified = w.result.whenComplete((r,e)->{
+            finished.add(w);
+            Runnable listener = asyncListener;
+            if(listener!=null) listener.run();
+        });
+    }
+
+    /**
+     * One call to {@link AsyncNode#updateAsync(Executor)}.
+     */
+    private static class AsyncWork {
+        final Node node;
+        final CompletableFuture<Runnable> result;
+        /**
+         * completes after this work has been queued in {@link #finished} and the listener has been told.
+         */
+        CompletableFuture<?> notified;
+
+        AsyncWork(Node node,CompletableFuture<Runnable> result) {
+            this.node = node;
+            this.result = result;
+        }
+    }
+
+    /**
+     * @return true if the next {@link #update()} has anything to do: a {@link Node} changed, the topology changed, or
+     * {@link AsyncNode} work finished.
+     */
+    boolean hasPendingWork() {
+        long stamp = lockForWriting();
+        try {
+            return getExecutionPlan().hasPendingWork() || !finished.isEmpty() || !dirtyFromOtherThreads.isEmpty();
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * Forgets the {@link Node}s waiting for {@link #update()}, because their results were found some other way.  The
+     * {@link Node}s stay out of date until {@link #markAllDirty()}.
+     */
+    void clearPendingWork() {
+        long stamp = lockForWriting();
+        try {
+            getExecutionPlan().clearPending();
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * Makes the next {@link #update()} visit every {@link Node}.
+     */
+    void markAllDirty() {
+        long stamp = lockForWriting();
+        try {
+            getExecutionPlan().markAllPending();
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * @return true if any {@link AsyncNode} has work that has not been published by {@link #update()}.
+     */
+    public boolean hasAsyncWork() {
+        return read(()->!inFlight.isEmpty());
+    }
+
+    /**
+     * @return a future that completes when all the {@link AsyncNode} work started so far has completed.  Call
+     * {@link #update()} afterwards to publish the results.
+     */
+    public CompletableFuture<Void> whenAsyncWorkDone() {
+        CompletableFuture<?> [] list = read(()->inFlight.values().stream().map(w->w.notified).toArray(CompletableFuture<?>[]::new));
+        return CompletableFuture.allOf(list);
+    }
+
+    /**
+     * Choose where {@link AsyncNode}s do their work.  The default uses virtual threads when the JVM has them, and
+     * otherwise a cached pool of daemon threads.
+     * @param executor the {@link Executor} to use.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        asyncExecutor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * @return the {@link Executor} used by {@link AsyncNode}s.
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Set a listener that is called each time an {@link AsyncNode} finishes its work, typically to schedule another
+     * {@link #update()}.  The listener is called on the worker thread.
+     * @param listener the listener, or null for none.
+     */
+    public void setAsyncListener(Runnable listener) {
+        asyncListener = listener;
+    }
+
+    /**
+     * @return the listener called each time an {@link AsyncNode} finishes its work, or null for none.
+     */
+    public Runnable getAsyncListener() {
+        return asyncListener;
+    }
+
+    /**
+     * Virtual threads are not part of the language level this library is built for, so look for them at runtime.
+     * @return a virtual thread per task executor if the JVM has one, otherwise a cached pool of daemon threads.
+     */
+    private static ExecutorService createDefaultAsyncExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)m.invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r->{
+                Thread t = new Thread(r,"NodeGraph async");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Turn the measurement of {@link #update()} on or off.  While on, every {@link Node} update is counted and timed
+     * and every value sent across a {@link NodeConnection} is counted.  A compiled graph (see
+     * {@link #setCompilePureNodes(boolean)}) runs every {@link Node} of the program on any change, and each run is
+     * counted that way.  While off the cost is one check per {@link Node}.  Turning metrics off keeps what has been measured so far.
+     * @param enabled true to measure.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metricsEnabled = enabled;
+    }
+
+    /**
+     * @return true if {@link #update()} is being measured.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * @return everything measured in this graph so far.  Use {@link ExecutionMetrics#reset()} to start again.
+     */
+    public ExecutionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the {@link ExecutionMetrics} to record into, or null if metrics are off.
+     */
+    ExecutionMetrics getActiveMetrics() {
+        return metricsEnabled ? metrics : null;
+    }
+
+    /**
+     * When true, a graph made only of {@link PureNode}s is compiled into a single straight-line program that
+     * {@link #update()} runs instead of visiting each {@link Node}.  The sources of the program must be
+     * {@link SupergraphInput}s such as {@link com.marginallyClever.nodeGraphCore.builtInNodes.LoadNumber}.  Graphs
+     * with any other kind of {@link Node} or with a feedback loop are interpreted as usual.  The program is rebuilt whenever the topology changes.
+     * @param compile true to compile when possible.
+     */
+    public void setCompilePureNodes(boolean compile) {
+        compilePureNodes = compile;
+        invalidatePlan();
+    }
+
+    /**
+     * @return true if {@link #update()} may compile this graph.
+     */
+    public boolean getCompilePureNodes() {
+        return compilePureNodes;
+    }
+
+    /**
+     * When true, a dirty {@link PureNode} whose inputs match an earlier update of the same class of {@link Node} gets
+     * its outputs from the {@link MemoCache} of that class instead of running {@link Node#update()}.  Worth turning on
+     * when expensive {@link PureNode}s often see the same inputs again.  A compiled graph does not use the cache.
+     * @param memoize true to memoize.
+     */
+    public void setMemoizePureNodes(boolean memoize) {
+        memoizePureNodes = memoize;
+    }
+
+    /**
+     * @return true if {@link PureNode}s are updated through their {@link MemoCache}.
+     */
+    public boolean getMemoizePureNodes() {
+        return memoizePureNodes;
+    }
+
+    /**
+     * @return true if {@link #update()} will run a compiled program for the current topology.
+     */
+    public boolean isCompiled() {
+        long stamp = lockForWriting();
+        try {
+            getExecutionPlan();
+            return compiled!=null;
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * A feedback loop is run over and over by {@link #update()} until its values stop changing.  This limits how many
+     * times that can happen in one update, so a loop that never settles (a counter, an oscillator) costs a fixed
+     * amount and then waits for something upstream to change.
+     * @param limit the most times one loop is run in one update.  Must be at least 1.
+     * @throws IllegalArgumentException if the limit is less than 1.
+     */
+    public void setMaxLoopIterations(int limit) throws IllegalArgumentException {
+        if(limit<1) throw new IllegalArgumentException("limit must be at least 1.");
+        maxLoopIterations = limit;
+    }
+
+    /**
+     * @return the most times one feedback loop is run in one {@link #update()}.
+     */
+    public int getMaxLoopIterations() {
+        return maxLoopIterations;
+    }
+
+    /**
+     * @param n the {@link Node} to check.
+     * @return an unmodifiable set of the {@link Node}s in the same feedback loop as n, including n, or an empty set.
+     */
+    public Set<Node> getLoop(Node n) {
+        long stamp = lockForWriting();
+        try {
+            return loops.getLoop(n);
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * @return every feedback loop in this graph.
+     */
+    public List<Set<Node>> getLoops() {
+        long stamp = lockForWriting();
+        try {
+            return loops.getLoops();
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * @param from the {@link Node} at the upstream end of a possible {@link NodeConnection}.
+     * @param to the {@link Node} at the downstream end of a possible {@link NodeConnection}.
+     * @return true if a {@link NodeConnection} from one to the other would close a feedback loop.
+     */
+    public boolean wouldCreateLoop(Node from,Node to) {
+        long stamp = lockForWriting();
+        try {
+            return loops.wouldCreateLoop(from,to);
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * Choose how {@link #update()} runs.  With no executor every {@link Node} is updated on the calling thread.  With
+     * an executor, {@link Node}s that do not depend on each other are updated at the same time on the pool.  Each
+     * {@link Node} still sees all of its upstream connections applied first, so the results are the same either way.
+     * {@link Node#update()} must be safe to call from a pool thread.
+     * @param pool the {@link ForkJoinPool} to use, or null to run sequentially.
+     */
+    public void setExecutor(ForkJoinPool pool) {
+        executor = pool;
+    }
+
+    /**
+     * @return the {@link ForkJoinPool} used by {@link #update()}, or null if updates are sequential.
+     */
+    public ForkJoinPool getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the cached {@link ExecutionPlan}, compiling a new one if the topology has changed since the last call.
+     * @return the current {@link ExecutionPlan}.
+     */
+    ExecutionPlan getExecutionPlan() {
+        if(plan==null || plan.isStale()) {
+            plan = new ExecutionPlan(this,nodes,connections);
+            compiled = compilePureNodes ? CompiledGraph.compile(plan) : null;
+        }
+        return plan;
+    }
+
+    /**
+     * @return a number that changes every time a {@link Node} or {@link NodeConnection} is added, removed or
+     * reordered, even directly through {@link #getNodes()} or {@link #getConnections()}.
+     */
+    long getStructureVersion() {
+        return ((long)nodes.getModCount()<<32) | (connections.getModCount() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Makes this graph safe to share between threads, such as a worker thread that calls {@link #update()} and the
+     * event dispatch thread that paints it.  Call this before the graph is shared.
+     * <ul>
+     * <li>{@link #getNodes()} and {@link #getConnections()} return immutable copies.  A copy is made once after each
+     * structural change and then handed out without locking.</li>
+     * <li>Other lookups read optimistically and only take a lock if a change happened at the same time.</li>
+     * <li>Structural changes and {@link #update()} happen one at a time.  Lookups that may rebuild an index, such as
+     * {@link #findNodeWithUniqueID(long)} and {@link #getLoops()}, count as changes.</li>
+     * <li>A value changed on another thread while an update is running is picked up by the next update.</li>
+     * </ul>
+     * @param concurrent true to make this graph safe to share.
+     */
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+        nodesView = null;
+        connectionsView = null;
+    }
+
+    /**
+     * @return true if this graph is safe to share between threads.
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * @return the stamp to pass to {@link #unlockForWriting(long)}.  0 if nothing was locked.
+     */
+    private long lockForWriting() {
+        if(!concurrent || writer==Thread.currentThread()) {
+            if(indexesAreStale) rebuildIndexes();
+            return 0;
+        }
+        long stamp = lock.writeLock();
+        writer = Thread.currentThread();
+        return stamp;
+    }
+
+    private void unlockForWriting(long stamp) {
+        if(stamp==0) return;
+        writer = null;
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Read the indexes of this graph.  While {@link #concurrent} the read is tried without a lock first, and done
+     * again with a lock if a change happened at the same time.
+     * @param reader the read.  Must not change anything.
+     * @return the result of the read.
+     */
+    private <T> T read(Supplier<T> reader) {
+        if(!concurrent || writer==Thread.currentThread()) {
+            if(indexesAreStale) rebuildIndexes();
+            return reader.get();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if(stamp!=0) {
+            try {
+                T result = reader.get();
+                if(lock.validate(stamp)) return result;
+            } catch(RuntimeException ignored) {
+                // torn by a change.  Try again with the lock.
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Called by a {@link Node} in this graph when one of its {@link NodeVariable}s becomes dirty.
+     * @param n the {@link Node} that changed.
+     */
+    void markDirty(Node n) {
+        if(concurrent && writer!=Thread.currentThread()) {
+            dirtyFromOtherThreads.add(n);
+            return;
+        }
+        if(plan!=null) plan.markDirty(n);
+    }
+
+    /**
+     * Called by a {@link Node} in this graph when anything about it changes, even during an update.
+     * @param n the {@link Node} that changed.
+     */
+    void onNodeChanged(Node n) {
+        if(snapshots!=null) snapshots.onChange(n);
+    }
+
+    /**
+     * Returns an immutable view of this graph as it is now.  The first snapshot costs as much as a
+     * {@link #deepCopy()}.  After that only the {@link Node}s and {@link NodeConnection}s that changed since the last
+     * snapshot are recorded again, and everything else is shared with the last snapshot.  Call this from the thread
+     * that edits and updates the graph.
+     * @return a {@link GraphSnapshot} of this graph.
+     */
+    public GraphSnapshot snapshot() {
+        long stamp = lockForWriting();
+        try {
+            if(snapshots==null) snapshots = new SnapshotIndex(this);
+            return snapshots.snapshot();
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * Forget the cached {@link ExecutionPlan} and the copies handed out by {@link #getNodes()} and
+     * {@link #getConnections()}.  Call this after any change to the topology of the graph.
+     */
+    private void invalidatePlan() {
+        plan = null;
+        compiled = null;
+        nodesView = null;
+        connectionsView = null;
+    }
+
+    /**
+     * @return a new {@link List} of all the {@link Node}s in the order {@link #update()} will visit them.  The
+     * {@link Node}s of each feedback loop are listed together.
+     */
+    public List<Node> getExecutionOrder() {
+        long stamp = lockForWriting();
+        try {
+            return Arrays.asList(getExecutionPlan().order.clone());
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
     /**
      * @return a {@link List} of all the {@link Node}s within this {@link NodeGraph}.
-     * It is not a copy!  Use with caution.
+     * It is not a copy!  Use with caution.  Changes made to it are seen by this graph, but rebuild every index of the
+     * graph, so prefer {@link #add(Node)} and {@link #remove(Node)}.  While {@link #isConcurrent()} it is an
+     * immutable copy that is safe to iterate while the graph changes.
      */
     public List<Node> getNodes() {
-        return nodes;
+        if(!concurrent || writer==Thread.currentThread()) return nodesEditable;
+        List<Node> view = nodesView;
+        if(view!=null) return view;
+        long stamp = lock.readLock();
+        try {
+            if(nodesView==null) nodesView = List.copyOf(nodes);
+            return nodesView;
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     /**
      * @return a {@link List} of all the {@link NodeConnection}s within this {@link NodeGraph}.
-     * It is not a copy!  Use with caution.
+     * It is not a copy!  Use with caution.  Changes made to it are seen by this graph, but rebuild every index of the
+     * graph, so prefer {@link #add(NodeConnection)} and {@link #remove(NodeConnection)}.  While
+     * {@link #isConcurrent()} it is an immutable copy that is safe to iterate while the graph changes.
      */
     public List<NodeConnection> getConnections() {
-        return connections;
+        if(!concurrent || writer==Thread.currentThread()) return connectionsEditable;
+        List<NodeConnection> view = connectionsView;
+        if(view!=null) return view;
+        long stamp = lock.readLock();
+        try {
+            if(connectionsView==null) connectionsView = List.copyOf(connections);
+            return connectionsView;
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     /**
-     * Adds a node to this graph.
+     * Adds a node to this graph.  A {@link Node} with a provisional ID (zero or less) gets one from
+     * {@link #getUniqueIDAllocator()}.
+     * A {@link Node} reports its changes to one graph, so it can not be in two graphs at once.  Remove it from the
+     * other graph first.
      * @param node the subject
      * @return the same node for convenient method chaining.
+     * @throws IllegalArgumentException if the node belongs to another graph.
      */
-    public Node add(Node node) {
-        nodes.add(node);
-        return node;
+    public Node add(Node node) throws IllegalArgumentException {
+        checkCanAdd(node);
+        long stamp = lockForWriting();
+        try {
+            if(node.getUniqueID()<=0) node.setUniqueID(ids.next());
+            else ids.observe(node.getUniqueID());
+            nodes.add(node);
+            node.setParentGraph(this);
+            indexUniqueID(node);
+            if(snapshots!=null) snapshots.onAdd(node);
+            invalidatePlan();
+            return node;
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
     /**
@@ -70,35 +777,113 @@ public class NodeGraph {
      * @param n the subject to be removed.
      */
     public void remove(Node n) {
-        nodes.remove(n);
-        removeConnectionsToNode(n);
+        long stamp = lockForWriting();
+        try {
+            nodes.remove(n);
+            if(n.getParentGraph()==this) n.setParentGraph(null);
+            if(byUniqueID.get(n.getUniqueID())==n) {
+                byUniqueID.remove(n.getUniqueID());
+                // another node with the same ID may still be in the graph.
+                if(hasDuplicateIDs) uniqueIDIndexIsStale = true;
+            }
+            removeConnectionsToNode(n);
+            if(snapshots!=null) snapshots.onRemove(n);
+            loops.onRemove(n);
+            inFlight.remove(n);
+            metrics.forget(n);
+            invalidatePlan();
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
     /**
-     * Adds a {@link NodeConnection} without checking if it already exists.
+     * Adds a {@link NodeConnection} without checking if it already exists.  Do not change the ends of a
+     * {@link NodeConnection} while it is in a graph, remove it first.
      * @param connection the item to add.
      * @return the same connection for convenient method chaining.
      */
     public NodeConnection add(NodeConnection connection) {
-        connections.add(connection);
-        return connection;
+        long stamp = lockForWriting();
+        try {
+            connections.add(connection);
+            indexConnection(connection);
+            loops.onConnect(connection);
+            if(snapshots!=null) snapshots.onConnect(connection);
+            invalidatePlan();
+            return connection;
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
+    /**
+     * Add many {@link NodeConnection}s at once, as when a graph is loaded.  Loops are found once when next asked for
+     * instead of once per {@link NodeConnection}.
+     * @param list the {@link NodeConnection}s to add.
+     */
+    void addAll(Collection<NodeConnection> list) {
+        long stamp = lockForWriting();
+        try {
+            connections.addAll(list);
+            for(NodeConnection c : list) indexConnection(c);
+            if(snapshots!=null) {
+                for(NodeConnection c : list) snapshots.onConnect(c);
+            }
+            loops.invalidate();
+            invalidatePlan();
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    /**
+     * Remove a {@link NodeConnection} from the model.  If the exact instance is not in the model then the first
+     * equivalent {@link NodeConnection} is removed instead.
+     * @param c the subject to be removed.
+     */
     public void remove(NodeConnection c) {
-        connections.remove(c);
+        long stamp = lockForWriting();
+        try {
+            NodeConnection victim = containsInstance(getConnectionsFrom(c.getInNode()),c) ? c : getMatchingConnection(c);
+            if(victim==null) {
+                // not indexed, perhaps one end is missing.
+                connections.remove(c);
+                if(snapshots!=null) snapshots.invalidate();
+                invalidatePlan();
+                return;
+            }
+            connections.removeIf(x -> x==victim);
+            unindexConnection(victim);
+            loops.onDisconnect(List.of(victim));
+            if(snapshots!=null) snapshots.onDisconnect(List.of(victim));
+            invalidatePlan();
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
     /**
-     * Remove all {@link NodeConnection}s from the model associated with a given {@link Node}
+     * Remove all {@link NodeConnection}s from the model associated with a given {@link Node}.  Finding them costs time
+     * proportional to the number of connections on the {@link Node}, not the size of the graph.
      * @param n the subject from which all connections should be removed.
      */
     public void removeConnectionsToNode(Node n) {
-        ArrayList<NodeConnection> toKeep = new ArrayList<>();
-        for(NodeConnection c : connections) {
-            if(!c.isConnectedTo(n)) toKeep.add(c);
+        long stamp = lockForWriting();
+        try {
+            Set<NodeConnection> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+            toRemove.addAll(getConnectionsFrom(n));
+            toRemove.addAll(getConnectionsTo(n));
+            if(toRemove.isEmpty()) return;
+
+            for(NodeConnection c : toRemove) unindexConnection(c);
+            connections.removeIf(toRemove::contains);
+            loops.onDisconnect(toRemove);
+            if(snapshots!=null) snapshots.onDisconnect(toRemove);
+            invalidatePlan();
+        } finally {
+            unlockForWriting(stamp);
         }
-        connections.clear();
-        connections.addAll(toKeep);
     }
 
     /**
@@ -107,17 +892,126 @@ public class NodeGraph {
      * @return returns the matching {@link NodeConnection} or null.
      */
     public NodeConnection getMatchingConnection(NodeConnection connection) {
-        for(NodeConnection c : connections) {
-            if(c.equals(connection)) return c;
+        if(connection.getInNode()==null || connection.getOutNode()==null) return null;
+        return read(()->byEndPoints.get(connection));
+    }
+
+    /**
+     * @param n the {@link Node} to check.
+     * @return an unmodifiable {@link List} of the {@link NodeConnection}s that leave a {@link Node}.
+     */
+    public List<NodeConnection> getConnectionsFrom(Node n) {
+        return read(()->listOf(outbound.get(n)));
+    }
+
+    /**
+     * @param n the {@link Node} to check.
+     * @return an unmodifiable {@link List} of the {@link NodeConnection}s that arrive at a {@link Node}.
+     */
+    public List<NodeConnection> getConnectionsTo(Node n) {
+        return read(()->listOf(inbound.get(n)));
+    }
+
+    /**
+     * @return an unmodifiable view of the list, or a copy of it if another thread may change it.
+     */
+    private List<NodeConnection> listOf(List<NodeConnection> list) {
+        if(list==null) return Collections.emptyList();
+        if(concurrent && writer!=Thread.currentThread()) return List.copyOf(list);
+        return Collections.unmodifiableList(list);
+    }
+
+    private boolean containsInstance(List<NodeConnection> list,NodeConnection c) {
+        for(NodeConnection x : list) {
+            if(x==c) return true;
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * Called after {@link #nodes} or {@link #connections} was changed through {@link #getNodes()} or
+     * {@link #getConnections()}.  The indexes are rebuilt the next time they are used, or at once by the thread that
+     * holds the write lock so that other threads never see them stale.
+     */
+    private void onEditedDirectly() {
+        indexesAreStale = true;
+        if(concurrent) rebuildIndexes();
+    }
+
+    /**
+     * Called before a {@link Node} is put in {@link #nodes} through {@link #getNodes()}.  Gives it an ID like
+     * {@link #add(Node)} does and makes it report its changes to this graph at once.
+     * @param node the {@link Node} arriving.
+     * @throws IllegalArgumentException if the node belongs to another graph.
+     */
+    private void adoptDirectly(Node node) throws IllegalArgumentException {
+        checkCanAdd(node);
+        if(node.getParentGraph()==this) return;
+        if(node.getUniqueID()<=0) node.setUniqueID(ids.next());
+        else ids.observe(node.getUniqueID());
+        node.setParentGraph(this);
+    }
+
+    /**
+     * Rebuild every index from {@link #nodes} and {@link #connections}.  {@link Node}s that left directly no longer
+     * report to this graph.
+     */
+    private void rebuildIndexes() {
+        indexesAreStale = false;
+        Set<Node> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        members.addAll(nodes);
+        for(Node n : byUniqueID.values()) {
+            if(!members.contains(n) && n.getParentGraph()==this) n.setParentGraph(null);
+        }
+        outbound.clear();
+        inbound.clear();
+        byEndPoints.clear();
+        for(NodeConnection c : connections) indexConnection(c);
+        rebuildUniqueIDIndex();
+        loops.invalidate();
+        if(snapshots!=null) snapshots.invalidate();
+        invalidatePlan();
+    }
+
+    private void indexConnection(NodeConnection c) {
+        Node from = c.getInNode();
+        Node to = c.getOutNode();
+        if(from==null || to==null) return;
+        outbound.computeIfAbsent(from,k->new ArrayList<>()).add(c);
+        inbound.computeIfAbsent(to,k->new ArrayList<>()).add(c);
+        byEndPoints.putIfAbsent(c,c);
+    }
+
+    private void unindexConnection(NodeConnection c) {
+        Node from = c.getInNode();
+        Node to = c.getOutNode();
+        if(from==null || to==null) return;
+        removeFrom(outbound,from,c);
+        removeFrom(inbound,to,c);
+        if(byEndPoints.get(c)==c) {
+            byEndPoints.remove(c);
+            // another connection with the same end points may still exist.
+            for(NodeConnection other : getConnectionsFrom(from)) {
+                if(other.equals(c)) {
+                    byEndPoints.put(other,other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void removeFrom(Map<Node,List<NodeConnection>> map,Node key,NodeConnection c) {
+        List<NodeConnection> list = map.get(key);
+        if(list==null) return;
+        list.removeIf(x -> x==c);
+        if(list.isEmpty()) map.remove(key);
     }
 
     @Override
     public String toString() {
         return "NodeBasedEditorModel{" +
-                "nodes=" + nodes +
-                ", connections=" + connections +
+                "nodes=" + getNodes() +
+                ", connections=" + getConnections() +
                 '}';
     }
 
@@ -125,8 +1019,29 @@ public class NodeGraph {
      * Empty the model.
      */
     public void clear() {
-        nodes.clear();
-        connections.clear();
+        long stamp = lockForWriting();
+        try {
+            for(Node n : nodes) {
+                if(n.getParentGraph()==this) n.setParentGraph(null);
+            }
+            nodes.clear();
+            connections.clear();
+            outbound.clear();
+            inbound.clear();
+            byEndPoints.clear();
+            byUniqueID.clear();
+            loops.clear();
+            if(snapshots!=null) snapshots.invalidate();
+            uniqueIDIndexIsStale = false;
+            hasDuplicateIDs = false;
+            indexesAreStale = false;
+            ids.reset();
+            inFlight.clear();
+            metrics.reset();
+            invalidatePlan();
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
     /**
@@ -137,7 +1052,7 @@ public class NodeGraph {
      */
     public NodeConnectionPointInfo getFirstNearbyConnection(Point point, double r) {
         double rr=r*r;
-        for(Node n : nodes) {
+        for(Node n : getNodes()) {
             for(int i = 0; i < n.getNumVariables(); ++i) {
                 NodeVariable<?> v = n.getVariable(i);
                 if(v.getHasInput() && v.getInPosition().distanceSq(point) < rr) {
@@ -151,50 +1066,136 @@ public class NodeGraph {
         return null;
     }
 
+    /**
+     * Find a {@link Node} by its {@link Node#getUniqueName()}.  Names made by {@link Node#getUniqueName()} start with
+     * the ID, which is looked up in a hash table.  Anything else falls back to a search of every {@link Node}.
+     * @param uniqueName the name to find.
+     * @return the matching {@link Node} or null.
+     */
     public Node findNodeWithUniqueName(String uniqueName) {
-        for(Node n : nodes) {
+        int dash = uniqueName.indexOf('-');
+        if(dash>0) {
+            try {
+                Node n = findNodeWithUniqueID(Long.parseLong(uniqueName,0,dash,10));
+                if(n!=null && uniqueName.length()==dash+1+n.getName().length()
+                        && uniqueName.startsWith(n.getName(),dash+1)) {
+                    return n;
+                }
+            } catch(NumberFormatException ignored) {}
+        }
+
+        for(Node n : getNodes()) {
             if(n.getUniqueName().equals(uniqueName)) return n;
         }
         return null;
     }
 
     /**
-     * Every {@link Node} and {@link NodeConnection} has a unique ID.  If the model has just been restored from a file
-     * then the static unique ID will be wrong.  This method bumps the first available unique ID up to the largest value
-     * found.  Then the next attempt to create a unique item will be safe.
+     * Find a {@link Node} by its {@link Node#getUniqueID()} in constant time.
+     * @param uniqueID the ID to find.
+     * @return the first matching {@link Node} or null.
      */
-    public void bumpUpIndexableID() { //TODO THIS SHOULDN'T BE PUBLIC!
-        int id=0;
-        for(Node n : nodes) {
-            id = Math.max(id, n.getUniqueID());
+    public Node findNodeWithUniqueID(long uniqueID) {
+        long stamp = lockForWriting();
+        try {
+            if(uniqueIDIndexIsStale) rebuildUniqueIDIndex();
+            Node n = byUniqueID.get(uniqueID);
+            if(n!=null && n.getUniqueID()!=uniqueID) {
+                // the node was renumbered behind our back.
+                rebuildUniqueIDIndex();
+                n = byUniqueID.get(uniqueID);
+            }
+            return n;
+        } finally {
+            unlockForWriting(stamp);
+        }
+    }
+
+    private void checkCanAdd(Node node) throws IllegalArgumentException {
+        NodeGraph owner = node.getParentGraph();
+        if(owner!=null && owner!=this) {
+            throw new IllegalArgumentException(node.getUniqueName()+" already belongs to another graph.");
         }
-        Node.setUniqueIDSource(id);
     }
 
     /**
-     * Add all {@link Node}s and {@link NodeConnection}s from one model to this model.
-     * @param b the model to add.
+     * Called by a {@link Node} in this graph when its ID changes.
+     * @param id the new ID.
      */
-    public void add(NodeGraph b) {
-        assignNewUniqueIDs(0);
-        b.assignNewUniqueIDs(Node.getUniqueIDSource());
+    void onUniqueIDChanged(long id) {
+        uniqueIDIndexIsStale = true;
+        ids.observe(id);
+    }
 
-        nodes.addAll(b.nodes);
-        connections.addAll(b.connections);
+    /**
+     * @return the {@link UniqueIDAllocator} of this graph.  Use it to give IDs to many {@link Node}s made in parallel
+     * before they are added.
+     */
+    public UniqueIDAllocator getUniqueIDAllocator() {
+        return ids;
+    }
+
+    private void indexUniqueID(Node n) {
+        if(uniqueIDIndexIsStale) return;
+        Node old = byUniqueID.putIfAbsent(n.getUniqueID(),n);
+        if(old!=null && old!=n) hasDuplicateIDs = true;
+    }
+
+    private void rebuildUniqueIDIndex() {
+        byUniqueID.clear();
+        hasDuplicateIDs = false;
+        uniqueIDIndexIsStale = false;
+        for(Node n : nodes) indexUniqueID(n);
+    }
 
-        bumpUpIndexableID();
+    /**
+     * Every {@link Node} has a unique ID.  The graph sees the ID of each {@link Node} as it is added or renumbered, so
+     * this is only needed if an ID was changed while the {@link Node} reported to some other graph.  Makes sure that
+     * no ID already in this graph is handed out again.
+     */
+    public void bumpUpIndexableID() { //TODO THIS SHOULDN'T BE PUBLIC!
+        long stamp = lockForWriting();
+        try {
+            for(Node n : nodes) ids.observe(n.getUniqueID());
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
-    private void assignNewUniqueIDs(int startingIndex) {
-        for(Node n : nodes) n.setUniqueID(++startingIndex);
+    /**
+     * Add all {@link Node}s and {@link NodeConnection}s from one model to this model.  The {@link Node}s will report
+     * their changes to this model from now on.  The incoming {@link Node}s get new IDs from this graph, the IDs
+     * already in this graph do not change.
+     * @param b the model to add.
+     */
+    public void add(NodeGraph b) {
+        long stamp = lockForWriting();
+        try {
+            for(Node n : b.nodes) {
+                n.setUniqueID(ids.next());
+                n.setParentGraph(this);
+                indexUniqueID(n);
+            }
+            nodes.addAll(b.nodes);
+            connections.addAll(b.connections);
+            for(NodeConnection c : b.connections) indexConnection(c);
+            if(snapshots!=null) {
+                for(Node n : b.nodes) snapshots.onAdd(n);
+                for(NodeConnection c : b.connections) snapshots.onConnect(c);
+            }
+            loops.invalidate();
+            invalidatePlan();
+        } finally {
+            unlockForWriting(stamp);
+        }
     }
 
     /**
-     * Returns a deep copy of this {@link NodeGraph} by using the JSON serialization methods.
+     * Returns a deep copy of this {@link NodeGraph} made by {@link GraphCopier}.
      * @return the {@link NodeGraph} copy
      */
     public NodeGraph deepCopy() {
-        return JSONHelper.deepCopy(this);
+        return GraphCopier.copy(this);
     }
 
     /**
@@ -216,8 +1217,9 @@ public class NodeGraph {
      * @return the index within the list of nodes of the first occurrence of class c, or -1.
      */
     public int indexOfNode(Class<Add> c, int fromIndex) {
-        for(int i=fromIndex;i<nodes.size();++i) {
-            if(c.isInstance(nodes.get(i))) return i;
+        List<Node> list = getNodes();
+        for(int i=fromIndex;i<list.size();++i) {
+            if(c.isInstance(list.get(i))) return i;
         }
         return -1;
     }
@@ -230,7 +1232,7 @@ public class NodeGraph {
      */
     public int countNodesOfClass(Class<?> c) {
         int i=0;
-        for(Node n : nodes) {
+        for(Node n : getNodes()) {
             if(c.isInstance(n)) i++;
         }
         return i;
@@ -239,7 +1241,7 @@ public class NodeGraph {
     public List<Node> getNodesInRectangle(Rectangle2D selectionArea) {
         if(selectionArea==null) throw new InvalidParameterException("selectionArea cannot be null.");
         ArrayList<Node> found = new ArrayList<>();
-        for(Node n : nodes) {
+        for(Node n : getNodes()) {
             Rectangle r = n.getRectangle();
             if(selectionArea.intersects(r)) found.add(n);
         }
@@ -247,11 +1249,12 @@ public class NodeGraph {
     }
 
     public boolean isEmpty() {
-        return nodes.isEmpty();
+        return getNodes().isEmpty();
     }
 
     /**
-     * Returns all {@link NodeConnection}s that are only connected between the given set of nodes.
+     * Returns all {@link NodeConnection}s that are only connected between the given set of nodes.  The cost is
+     * proportional to the number of connections on the selected nodes, not the size of the graph.
      * @param selectedNodes the set of nodes to check
      * @return all {@link NodeConnection}s that are only connected between the given set of nodes.
      */
@@ -259,10 +1262,10 @@ public class NodeGraph {
         List<NodeConnection> list = new ArrayList<>();
         if(selectedNodes.size()<2) return list;
 
-        for(NodeConnection c : connections) {
-            if(selectedNodes.contains(c.getOutNode()) &&
-                selectedNodes.contains(c.getInNode())) {
-                list.add(c);
+        Set<Node> selected = new LinkedHashSet<>(selectedNodes);
+        for(Node n : selected) {
+            for(NodeConnection c : getConnectionsFrom(n)) {
+                if(selected.contains(c.getOutNode())) list.add(c);
             }
         }
         return list;
@@ -274,10 +1277,11 @@ public class NodeGraph {
      * @return the smallest {@link Rectangle} that contains all {@link Node}s, or null.
      */
     public Rectangle getBounds() {
-        if(nodes.size()==0) return null;
+        List<Node> list = getNodes();
+        if(list.size()==0) return null;
 
-        Rectangle r=new Rectangle(nodes.get(0).getRectangle());
-        for(Node n : nodes) {
+        Rectangle r=new Rectangle(list.get(0).getRectangle());
+        for(Node n : list) {
             r.union(n.getRectangle());
             // for very small graphs this is a redundant union with self.
             // For very large graphs this avoids any 'if' in the loop and saves time.
@@ -0,0 +1,76 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link NodeMetrics} counts the updates of one {@link Node}.  The counters can be read while the graph is running,
+ * but a reading taken during an update may mix values from before and after it.
+ */
+public class NodeMetrics {
+    private final LongAdder updateCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max,0);
+    private volatile long lastUpdateTime;
+
+    NodeMetrics() {
+        super();
+    }
+
+    /**
+     * Record one update.
+     * @param nanos how long the update took, in nanoseconds.
+     */
+    void record(long nanos) {
+        updateCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        lastUpdateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the number of times {@link Node#update()} was run.
+     */
+    public long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    /**
+     * @return the wall time of every update added together, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return the wall time of the slowest update, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the mean wall time of one update, in nanoseconds, or 0 if there have been no updates.
+     */
+    public double getAverageNanos() {
+        long count = getUpdateCount();
+        return (count==0) ? 0 : (double)getTotalNanos() / count;
+    }
+
+    /**
+     * @return when the last update finished, in milliseconds since the epoch, or 0 if there have been no updates.
+     */
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeMetrics{" +
+                "updateCount=" + getUpdateCount() +
+                ", totalNanos=" + getTotalNanos() +
+                ", maxNanos=" + getMaxNanos() +
+                ", lastUpdateTime=" + getLastUpdateTime() +
+                '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * A library of {@link Node}s.  {@link NodeFactory} finds every {@link NodeRegistry} with
+ * {@link java.util.ServiceLoader} the first time it is asked for a {@link Node}, so a plugin only has to list its
+ * registry in {@code META-INF/services/com.marginallyClever.nodeGraphCore.NodeRegistry} or in a
+ * {@code provides} clause of its {@code module-info}.
+ */
+public interface NodeRegistry {
+    /**
+     * Register each {@link Node} with {@link NodeFactory}.  Do not make any {@link Node}s here.  Register by class name
+     * with {@link NodeFactory#registerNode(String, String, ClassLoader)} so that no class of {@link Node} is loaded
+     * until it is used.  A {@link java.util.function.Supplier} that names the class, even in a lambda, loads it as soon
+     * as the registry itself is loaded.
+     */
+    void register();
+}
@@ -0,0 +1,138 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.awt.*;
+import java.util.List;
+
+/**
+ * The state of one {@link Node} at the moment a {@link GraphSnapshot} was taken.  {@link NodeSnapshot}s never change
+ * and can be read from any thread.
+ * <p>Values are copied with {@link GraphCopier#copyValue(Object)} going in and coming out, so a mutable value held
+ * here can not be changed by the graph or by a reader.  Whether a variable is dirty is not kept, a {@link Node}
+ * restored from a snapshot is dirty and will run on the next {@link NodeGraph#update()}.</p>
+ */
+public final class NodeSnapshot {
+    /**
+     * The position of the {@link Node} in the {@link GraphSnapshot}.
+     */
+    final int key;
+
+    /**
+     * An unused {@link Node} of the same class, used to {@link Node#create()} a new one.
+     */
+    private final Node prototype;
+
+    private final String name;
+    private final long uniqueID;
+    private final String label;
+    private final int x, y, width, height;
+    private final String [] variableNames;
+    private final Object [] values;
+    private final boolean [] hasInput;
+    private final boolean [] hasOutput;
+
+    /**
+     * The contents of a {@link Subgraph} whose inner graph was handed out, or null.
+     */
+    private final GraphSnapshot subgraph;
+
+    /**
+     * The contents of any other {@link Subgraph}, or null.
+     */
+    private final SubgraphDefinition definition;
+
+    NodeSnapshot(int key,Node prototype,Node n) {
+        this.key = key;
+        this.prototype = prototype;
+        name = n.getName();
+        uniqueID = n.getUniqueID();
+        label = n.getLabel();
+        Rectangle r = n.getRectangle();
+        x = r.x;
+        y = r.y;
+        width = r.width;
+        height = r.height;
+
+        int count = n.getNumVariables();
+        variableNames = new String[count];
+        values = new Object[count];
+        hasInput = new boolean[count];
+        hasOutput = new boolean[count];
+        for(int i=0;i<count;++i) {
+            NodeVariable<?> v = n.getVariable(i);
+            variableNames[i] = v.getName();
+            values[i] = GraphCopier.copyValue(v.getValue());
+            hasInput[i] = v.getHasInput();
+            hasOutput[i] = v.getHasOutput();
+        }
+
+        Subgraph s = (n instanceof Subgraph) ? (Subgraph)n : null;
+        subgraph = (s!=null && s.isDetached()) ? s.getGraph().snapshot() : null;
+        definition = (s!=null && !s.isDetached()) ? s.getDefinition() : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getUniqueID() {
+        return uniqueID;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return a copy of the bounds of the {@link Node}.
+     */
+    public Rectangle getRectangle() {
+        return new Rectangle(x,y,width,height);
+    }
+
+    public int getNumVariables() {
+        return values.length;
+    }
+
+    public String getVariableName(int index) {
+        return variableNames[index];
+    }
+
+    /**
+     * @param index the index of the variable.
+     * @return a copy of the value of the variable.
+     */
+    public Object getVariableValue(int index) {
+        return GraphCopier.copyValue(values[index]);
+    }
+
+    /**
+     * @return a new {@link Node} in the state described by this snapshot, not in any graph.
+     */
+    public Node toNode() {
+        Node n = prototype.create();
+        if(subgraph!=null) ((Subgraph)n).setGraph(subgraph.toGraph());
+        else if(definition!=null) ((Subgraph)n).setDefinition(definition);
+        n.setUniqueID(uniqueID);
+        n.setLabel(label);
+        n.setRectangle(new Rectangle(x,y,width,height));
+
+        List<NodeVariable<?>> variables = n.getVariables();
+        for(int i=0;i<values.length;++i) {
+            NodeVariable<?> v = (i<variables.size() && variables.get(i).getName().equals(variableNames[i]))
+                    ? variables.get(i) : findVariable(n,variableNames[i]);
+            if(v==null) continue;
+            v.setValue(GraphCopier.copyValue(values[i]));
+            v.hasInput = hasInput[i];
+            v.hasOutput = hasOutput[i];
+        }
+        n.updateBounds();
+        return n;
+    }
+
+    private static NodeVariable<?> findVariable(Node n,String name) {
+        for(NodeVariable<?> v : n.getVariables()) {
+            if(v.getName().equals(name)) return v;
+        }
+        return null;
+    }
+}
@@ -1,9 +1,12 @@
 package com.marginallyClever.nodeGraphCore;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * {@link NodeVariable}
+ * <p>Numbers and booleans can be stored without boxing by {@link DoubleNodeVariable}, {@link LongNodeVariable}, and
+ * {@link BooleanNodeVariable}.  Use {@link #getDouble()}, {@link #setDouble(double)} and friends to reach them.</p>
  */
 public class NodeVariable<T> {
     /**
@@ -25,7 +28,12 @@ public class NodeVariable<T> {
     protected boolean isDirty;
     protected final Rectangle rectangle = new Rectangle();
 
-    private NodeVariable(String _name,Class<T> type,T defaultValue,boolean _hasInput,boolean _hasOutput) {
+    /**
+     * The {@link Node} this variable belongs to.  The {@link Node} is told every time this variable becomes dirty.
+     */
+    Node owner;
+
+    protected NodeVariable(String _name,Class<T> type,T defaultValue,boolean _hasInput,boolean _hasOutput) {
         super();
         this.type = type;
         this.name = _name;
@@ -40,6 +48,39 @@ public class NodeVariable<T> {
         return new NodeVariable<>(name,clazz,defaultValue,hasInput,hasOutput);
     }
 
+    /**
+     * @param name the name of the variable
+     * @param defaultValue the starting value
+     * @param hasInput true if the variable can receive a connection
+     * @param hasOutput true if the variable can send a connection
+     * @return a {@link Number} variable that stores a primitive {@code double}.
+     */
+    public static DoubleNodeVariable newDoubleInstance(String name,double defaultValue,boolean hasInput,boolean hasOutput) {
+        return new DoubleNodeVariable(name,defaultValue,hasInput,hasOutput);
+    }
+
+    /**
+     * @param name the name of the variable
+     * @param defaultValue the starting value
+     * @param hasInput true if the variable can receive a connection
+     * @param hasOutput true if the variable can send a connection
+     * @return a {@link Number} variable that stores a primitive {@code long}.
+     */
+    public static LongNodeVariable newLongInstance(String name,long defaultValue,boolean hasInput,boolean hasOutput) {
+        return new LongNodeVariable(name,defaultValue,hasInput,hasOutput);
+    }
+
+    /**
+     * @param name the name of the variable
+     * @param defaultValue the starting value
+     * @param hasInput true if the variable can receive a connection
+     * @param hasOutput true if the variable can send a connection
+     * @return a {@link Boolean} variable that stores a primitive {@code boolean}.
+     */
+    public static BooleanNodeVariable newBooleanInstance(String name,boolean defaultValue,boolean hasInput,boolean hasOutput) {
+        return new BooleanNodeVariable(name,defaultValue,hasInput,hasOutput);
+    }
+
     /**
      * Creates a copy of this {@link NodeVariable}, while flipping hasInput and hasOutput
      * @return an inverted copy of this {@link NodeVariable}.
@@ -60,7 +101,7 @@ public class NodeVariable<T> {
     public void setValue(Object arg0) {
         if(isValidType(arg0)) {
             value = (T)arg0;
-            isDirty = true;
+            setIsDirty(true);
         }
     }
 
@@ -76,12 +117,85 @@ public class NodeVariable<T> {
         return type.isInstance(arg0);
     }
 
+    /**
+     * @param source another variable.
+     * @return true if the current value of source can be stored in this variable.
+     */
+    public boolean acceptsValueOf(NodeVariable<?> source) {
+        return isValidType(source.getValue());
+    }
+
+    /**
+     * @param source another variable.
+     * @return true if this variable already holds the value that {@link #setValueFrom(NodeVariable)} would copy.
+     */
+    public boolean hasSameValueAs(NodeVariable<?> source) {
+        return Objects.equals(getValue(),source.getValue());
+    }
+
+    /**
+     * Copy the value of another variable into this one.  Primitive variables override this to avoid boxing.
+     * @param source the variable to copy from.
+     */
+    public void setValueFrom(NodeVariable<?> source) {
+        setValue(source.getValue());
+    }
+
+    /**
+     * @return the value as a {@code double}.
+     * @throws ClassCastException if the value is not a {@link Number}.
+     */
+    public double getDouble() {
+        return ((Number)getValue()).doubleValue();
+    }
+
+    /**
+     * Set the value from a {@code double}.
+     * @param v the new value.
+     */
+    public void setDouble(double v) {
+        setValue(v);
+    }
+
+    /**
+     * @return the value as a {@code long}.
+     * @throws ClassCastException if the value is not a {@link Number}.
+     */
+    public long getLong() {
+        return ((Number)getValue()).longValue();
+    }
+
+    /**
+     * Set the value from a {@code long}.
+     * @param v the new value.
+     */
+    public void setLong(long v) {
+        setValue(v);
+    }
+
+    /**
+     * @return the value as a {@code boolean}.
+     * @throws ClassCastException if the value is not a {@link Boolean}.
+     */
+    public boolean getBoolean() {
+        return (Boolean)getValue();
+    }
+
+    /**
+     * Set the value from a {@code boolean}.
+     * @param v the new value.
+     */
+    public void setBoolean(boolean v) {
+        setValue(v);
+    }
+
     public T getValue() {
         return value;
     }
 
     public void setIsDirty(boolean state) {
         isDirty=state;
+        if(state && owner!=null) owner.onVariableChanged();
     }
 
     public boolean getIsDirty() {
@@ -95,7 +209,7 @@ public class NodeVariable<T> {
                 ", isDirty=" + isDirty +
                 ", hasInput=" + hasInput +
                 ", hasOutput=" + hasOutput +
-                ", value=" + value +
+                ", value=" + getValue() +
                 '}';
     }
 
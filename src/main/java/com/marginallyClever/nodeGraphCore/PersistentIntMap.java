@@ -0,0 +1,140 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.function.Consumer;
+
+/**
+ * An immutable map from non-negative int keys to values.  {@link #put(int, Object)} and {@link #remove(int)} return a
+ * new map that shares everything but the changed path with the old one, so keeping many versions of a large map costs
+ * little more than keeping one.
+ * <p>The map is a trie that takes 5 bits of the key per level, so every path is at most 7 levels deep.  Each level
+ * only stores the children that exist, found by counting the bits of a bitmap.  Walking the trie visits the keys in
+ * ascending order.</p>
+ * @param <V> the type of value.
+ */
+final class PersistentIntMap<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1<<BITS)-1;
+    private static final int TOP_SHIFT = 30;
+
+    private static final Trie EMPTY_TRIE = new Trie(0,new Object[0]);
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(EMPTY_TRIE,0);
+
+    private static final class Trie {
+        final int bitmap;
+        /**
+         * One child for each bit set in the bitmap.  Tries above the last level, values on the last level.
+         */
+        final Object[] children;
+
+        Trie(int bitmap,Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+
+    private final Trie root;
+    private final int size;
+
+    private PersistentIntMap(Trie root,int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>)EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key the key.
+     * @return the value stored for the key, or null.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Trie t = root;
+        for(int shift=TOP_SHIFT;;shift-=BITS) {
+            int bit = 1 << ((key>>>shift) & MASK);
+            if((t.bitmap & bit)==0) return null;
+            Object child = t.children[Integer.bitCount(t.bitmap & (bit-1))];
+            if(shift==0) return (V)child;
+            t = (Trie)child;
+        }
+    }
+
+    /**
+     * @param key the key.  Must not be negative.
+     * @param value the new value.  Must not be null.
+     * @return a map with the value stored for the key.
+     */
+    PersistentIntMap<V> put(int key,V value) {
+        if(key<0) throw new IllegalArgumentException("key must not be negative");
+        V old = get(key);
+        if(old==value) return this;
+        return new PersistentIntMap<>(put(root,TOP_SHIFT,key,value),old==null ? size+1 : size);
+    }
+
+    private static Trie put(Trie t,int shift,int key,Object value) {
+        int bit = 1 << ((key>>>shift) & MASK);
+        int index = Integer.bitCount(t.bitmap & (bit-1));
+        if((t.bitmap & bit)!=0) {
+            Object[] children = t.children.clone();
+            children[index] = (shift==0) ? value : put((Trie)children[index],shift-BITS,key,value);
+            return new Trie(t.bitmap,children);
+        }
+        Object[] children = new Object[t.children.length+1];
+        System.arraycopy(t.children,0,children,0,index);
+        children[index] = (shift==0) ? value : put(EMPTY_TRIE,shift-BITS,key,value);
+        System.arraycopy(t.children,index,children,index+1,t.children.length-index);
+        return new Trie(t.bitmap|bit,children);
+    }
+
+    /**
+     * @param key the key.
+     * @return a map without the key.
+     */
+    PersistentIntMap<V> remove(int key) {
+        if(key<0 || get(key)==null) return this;
+        Trie t = remove(root,TOP_SHIFT,key);
+        return new PersistentIntMap<>(t==null ? EMPTY_TRIE : t,size-1);
+    }
+
+    /**
+     * @return the trie without the key, or null if nothing is left.
+     */
+    private static Trie remove(Trie t,int shift,int key) {
+        int bit = 1 << ((key>>>shift) & MASK);
+        int index = Integer.bitCount(t.bitmap & (bit-1));
+        if(shift!=0) {
+            Trie child = remove((Trie)t.children[index],shift-BITS,key);
+            if(child!=null) {
+                Object[] children = t.children.clone();
+                children[index] = child;
+                return new Trie(t.bitmap,children);
+            }
+        }
+        if(t.children.length==1) return null;
+        Object[] children = new Object[t.children.length-1];
+        System.arraycopy(t.children,0,children,0,index);
+        System.arraycopy(t.children,index+1,children,index,children.length-index);
+        return new Trie(t.bitmap & ~bit,children);
+    }
+
+    /**
+     * @param action called once for each value, in ascending order of key.
+     */
+    void forEach(Consumer<? super V> action) {
+        forEach(root,TOP_SHIFT,action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Trie t,int shift,Consumer<? super V> action) {
+        for(Object child : t.children) {
+            if(shift==0) action.accept((V)child);
+            else forEach((Trie)child,shift-BITS,action);
+        }
+    }
+}
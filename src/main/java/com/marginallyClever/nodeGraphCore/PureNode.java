@@ -0,0 +1,8 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * {@link Node}s with this interface have no side effects and their outputs depend only on their inputs.  A
+ * {@link NodeGraph} made only of {@link PureNode}s can be compiled, see {@link NodeGraph#setCompilePureNodes(boolean)}.
+ */
+public interface PureNode {
+}
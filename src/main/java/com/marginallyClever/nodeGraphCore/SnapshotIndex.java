@@ -0,0 +1,146 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link SnapshotIndex} keeps the persistent copy of a {@link NodeGraph} that {@link NodeGraph#snapshot()} returns.
+ * <p>Every {@link Node} and {@link NodeConnection} gets a key in the order it joined the graph.  A connection is
+ * recorded as soon as it is made.  A {@link Node} that changes is only remembered, and recorded by the next
+ * {@link #snapshot()}, so a {@link Node} that changes many times between snapshots costs one new
+ * {@link NodeSnapshot}.  Taking a snapshot when nothing changed returns the last one.</p>
+ * <p>Like {@link LoopIndex} the index gives up on anything unusual and is rebuilt the next time it is asked for a
+ * snapshot.</p>
+ */
+class SnapshotIndex {
+    private final NodeGraph graph;
+
+    private final Map<Node,Integer> nodeKeys = new IdentityHashMap<>();
+    private final Map<NodeConnection,Integer> connectionKeys = new IdentityHashMap<>();
+    private int nextNodeKey = 0;
+    private int nextConnectionKey = 0;
+
+    /**
+     * {@link Node}s that changed since the last snapshot.  {@link Node}s may report changes from the threads of a
+     * parallel {@link NodeGraph#update()}.
+     */
+    private final Set<Node> changed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * One unused {@link Node} of each class, shared by every {@link NodeSnapshot} of that class.
+     */
+    private final Map<Class<?>,Node> prototypes = new HashMap<>();
+
+    private PersistentIntMap<NodeSnapshot> nodes = PersistentIntMap.empty();
+    private PersistentIntMap<GraphSnapshot.Connection> connections = PersistentIntMap.empty();
+    private GraphSnapshot last;
+
+    /**
+     * true if everything must be rebuilt before the next snapshot.
+     */
+    private boolean stale = true;
+
+    SnapshotIndex(NodeGraph graph) {
+        this.graph = graph;
+    }
+
+    GraphSnapshot snapshot() {
+        if(stale) rebuild();
+        if(!changed.isEmpty()) {
+            Iterator<Node> i = changed.iterator();
+            while(i.hasNext()) {
+                Node n = i.next();
+                i.remove();
+                Integer key = nodeKeys.get(n);
+                if(key!=null) nodes = nodes.put(key,record(key,n));
+            }
+            last = null;
+        }
+        if(last==null) last = new GraphSnapshot(nodes,connections);
+        return last;
+    }
+
+    void onAdd(Node n) {
+        if(stale) return;
+        nodeKeys.put(n,nextNodeKey++);
+        changed.add(n);
+    }
+
+    void onRemove(Node n) {
+        if(stale) return;
+        Integer key = nodeKeys.remove(n);
+        if(key!=null) {
+            nodes = nodes.remove(key);
+            last = null;
+        }
+        changed.remove(n);
+    }
+
+    void onChange(Node n) {
+        if(!stale) changed.add(n);
+    }
+
+    void onConnect(NodeConnection c) {
+        if(stale) return;
+        int key = nextConnectionKey++;
+        connectionKeys.put(c,key);
+        connections = connections.put(key,record(c));
+        last = null;
+    }
+
+    void onDisconnect(Collection<NodeConnection> list) {
+        if(stale) return;
+        for(NodeConnection c : list) {
+            Integer key = connectionKeys.remove(c);
+            if(key!=null) connections = connections.remove(key);
+        }
+        last = null;
+    }
+
+    /**
+     * Rebuild everything before the next snapshot.
+     */
+    void invalidate() {
+        stale = true;
+        last = null;
+        nodeKeys.clear();
+        connectionKeys.clear();
+        changed.clear();
+    }
+
+    private void rebuild() {
+        stale = false;
+        nextNodeKey = 0;
+        nextConnectionKey = 0;
+        nodes = PersistentIntMap.empty();
+        connections = PersistentIntMap.empty();
+        for(Node n : graph.getNodes()) {
+            int key = nextNodeKey++;
+            nodeKeys.put(n,key);
+            nodes = nodes.put(key,record(key,n));
+        }
+        for(NodeConnection c : graph.getConnections()) {
+            int key = nextConnectionKey++;
+            connectionKeys.put(c,key);
+            connections = connections.put(key,record(c));
+        }
+        changed.clear();
+        last = null;
+    }
+
+    private NodeSnapshot record(int key,Node n) {
+        Node prototype = prototypes.computeIfAbsent(n.getClass(),(k)->n.create());
+        return new NodeSnapshot(key,prototype,n);
+    }
+
+    private GraphSnapshot.Connection record(NodeConnection c) {
+        return new GraphSnapshot.Connection(
+                keyOf(c.getInNode()),c.getInVariableIndex(),
+                keyOf(c.getOutNode()),c.getOutVariableIndex());
+    }
+
+    private int keyOf(Node n) {
+        Integer key = (n==null) ? null : nodeKeys.get(n);
+        return (key==null) ? -1 : key;
+    }
+}
@@ -5,26 +5,110 @@ import com.marginallyClever.nodeGraphCore.SupergraphInput;
 import com.marginallyClever.nodeGraphCore.SupergraphOutput;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.*;
+import java.util.List;
 
 /**
  * A {@link Subgraph} is a {@link Node} which contains another graph.
+ * <p>The contents are a {@link SubgraphDefinition} shared with every copy of this {@link Subgraph}.  When the result
+ * only depends on the inputs a {@link Subgraph} holds nothing but its exposed variables and runs the shared inner graph
+ * of the definition.  It makes an inner graph of its own when the definition can not be shared or when
+ * {@link #getGraph()} is called.</p>
+ * <p>The outputs of each update are remembered in a {@link SubgraphCache}.  When the inner graph and the values that
+ * can change its result match an earlier update of any {@link Subgraph}, the remembered outputs are published and the
+ * inner graph is not run.  The inner graph keeps the new input values and is run in full the next time it runs.</p>
  */
 public class Subgraph extends Node implements SupergraphInput, SupergraphOutput, PrintWithGraphics {
-    private final NodeGraph graph = new NodeGraph();
+    private SubgraphDefinition definition = SubgraphDefinition.EMPTY;
 
-    private class VariablePair {
-        public NodeVariable<?> superVariable;
-        public NodeVariable<?> subVariable;
+    /**
+     * The inner graph, or null until it is needed.
+     */
+    private NodeGraph graph;
+
+    /**
+     * True once {@link #getGraph()} has handed out the inner graph, which may now differ from {@link #definition}.
+     */
+    private boolean detached;
+
+    /**
+     * True once {@link #update()} has published outputs.
+     */
+    private boolean evaluated;
+
+    /**
+     * True when outputs came from the {@link SubgraphCache} while there was an inner graph, so the {@link Node}s of
+     * the inner graph are behind its inputs.
+     */
+    private boolean innerIsStale;
+
+    private static final NodeVariable<?>[] NO_VARIABLES = new NodeVariable<?>[0];
+
+    /**
+     * The variables exposed to the supergraph, in the order of the {@link SubgraphDefinition}.
+     */
+    private NodeVariable<?>[] exposed = NO_VARIABLES;
+
+    /**
+     * The matching variables in the inner graph, or null until there is an inner graph.
+     */
+    private NodeVariable<?>[] inner;
+
+    /**
+     * Where the outputs of {@link #update()} are remembered, or null to not remember them.  null by default.
+     */
+    private SubgraphCache resultCache;
+
+    /**
+     * The {@link ExecutionPlan} of the inner graph when {@link #structure} was built.  A new plan means the structure
+     * may have changed.
+     */
+    private ExecutionPlan describedPlan;
+
+    /**
+     * The structure of the inner graph, or null if it can not be cached.
+     */
+    private Structure structure;
+
+    /**
+     * The classes of the {@link Node}s in a graph, their variables and how they are connected, with the variables and
+     * {@link Subgraph}s that decide the result of the graph besides its inputs.
+     */
+    static final class Structure {
+        private final ValueKey shape;
+
+        /**
+         * The variables that are not fed by a {@link NodeConnection} or an input and are not computed by their
+         * {@link Node}.
+         */
+        private final NodeVariable<?>[] freeVariables;
 
-        public VariablePair(NodeVariable subVariable) {
-            this.superVariable = subVariable.createInverse();
-            this.subVariable = subVariable;
+        private final Subgraph[] nested;
+
+        private Structure(ValueKey shape,NodeVariable<?>[] freeVariables,Subgraph[] nested) {
+            this.shape = shape;
+            this.freeVariables = freeVariables;
+            this.nested = nested;
         }
-    }
 
-    private ArrayList<VariablePair> pairs = new ArrayList<>();
+        /**
+         * @return the shape, the keys of the nested {@link Subgraph}s and the free values, or null if any of them can
+         * not be cached.
+         */
+        Object[] getContent() {
+            List<Object> values = new ArrayList<>(1+nested.length+freeVariables.length);
+            values.add(shape);
+            for(Subgraph n : nested) {
+                ValueKey k = n.getResultKey(false);
+                if(k==null) return null;
+                values.add(k);
+            }
+            for(NodeVariable<?> v : freeVariables) {
+                if(!addValue(values,v)) return null;
+            }
+            return values.toArray();
+        }
+    }
 
     public Subgraph() {
         super("SubGraph");
@@ -35,70 +119,106 @@ public class Subgraph extends Node implements SupergraphInput, SupergraphOutput,
         setGraph(graph);
     }
 
+    public Subgraph(SubgraphDefinition definition) {
+        this();
+        setDefinition(definition);
+    }
+
     /**
      * Stores a deep copy of the given graph and exposes the {@link SupergraphInput}s and {@link SupergraphOutput}s to
      * the supergraph.
      * @param graph the {@link NodeGraph} to store.
      */
     public void setGraph(NodeGraph graph) {
-        this.graph.clear();
-        this.graph.add(graph.deepCopy());
+        setDefinition(SubgraphDefinition.of(graph));
+    }
 
-        for(Node n : this.graph.getNodes()) {
-            extractSupergraphInputs(n);
-            extractSupergraphOutputs(n);
-        }
+    /**
+     * Use a shared definition and expose its {@link SupergraphInput}s and {@link SupergraphOutput}s to the supergraph.
+     * The variables exposed by the previous definition are removed.
+     * @param definition the {@link SubgraphDefinition} to use.
+     */
+    public void setDefinition(SubgraphDefinition definition) {
+        for(NodeVariable<?> v : exposed) removeVariable(v);
+
+        this.definition = definition;
+        graph = null;
+        inner = null;
+        detached = false;
+        evaluated = false;
+        innerIsStale = false;
+        describedPlan = null;
+        structure = null;
 
-        // sort and add the pairs.
-        Collections.sort(pairs,(a, b)->sortVariables(a,b));
-        for(VariablePair p : pairs) {
-            this.addVariable(p.superVariable);
+        exposed = new NodeVariable<?>[definition.getPairCount()];
+        for(int i=0;i<exposed.length;++i) {
+            exposed[i] = definition.getTemplateVariable(i).createInverse();
+            this.addVariable(exposed[i]);
         }
 
         this.updateBounds();
     }
 
-    private void extractSupergraphOutputs(Node n) {
-        if(n instanceof SupergraphOutput) {
-            System.out.println("SupergraphOutput "+n.getUniqueName());
-            for(int i=0;i<n.getNumVariables();++i) {
-                NodeVariable<?> v = n.getVariable(i);
-                if(v.getHasInput()) {
-                    System.out.println("found output "+v.getName());
-                    addToPairs(v);
-                }
-            }
-        }
+    /**
+     * @return the definition of this {@link Subgraph}.  If the inner graph was handed out by {@link #getGraph()} then a
+     * new definition of the inner graph as it is now.
+     */
+    public SubgraphDefinition getDefinition() {
+        return isDetached() ? SubgraphDefinition.of(graph) : definition;
     }
 
-    private void extractSupergraphInputs(Node n) {
-        if(n instanceof SupergraphInput) {
-            System.out.println("SupergraphInput "+n.getUniqueName());
-            for(int i=0;i<n.getNumVariables();++i) {
-                NodeVariable<?> v = n.getVariable(i);
-                if(v.getHasOutput()) {
-                    System.out.println("found input "+v.getName());
-                    addToPairs(v);
-                }
-            }
+    /**
+     * @return true if the inner graph was handed out by {@link #getGraph()}.
+     */
+    boolean isDetached() {
+        return detached;
+    }
+
+    /**
+     * @return the inner graph of this {@link Subgraph}, made from the definition if it does not exist yet.  Changes
+     * to it are not shared with other {@link Subgraph}s.  From now on this {@link Subgraph} has a definition of its
+     * own, so only call this to change the inner graph.  To look at it use {@link #copyGraph()}.
+     */
+    public NodeGraph getGraph() {
+        detached = true;
+        if(graph==null) {
+            materialize();
+            // catch up with the inputs that were published, so that the next update does not run it again.
+            if(evaluated && !hasDirtyInput()) graph.update();
         }
+        return graph;
     }
 
-    private int sortVariables(VariablePair a, VariablePair b) {
-        // all input first
-        int aIn = (a.subVariable.getHasInput())?1:0;
-        int bIn = (a.subVariable.getHasInput())?1:0;
-        if(aIn != bIn) return aIn-bIn;
-        // then sort by name alphabetically
-        return a.subVariable.getName().compareTo(b.subVariable.getName());
+    /**
+     * @return a new copy of the inner graph with the current inputs.  Does not change this {@link Subgraph}.
+     */
+    public NodeGraph copyGraph() {
+        if(graph!=null) return GraphCopier.copy(graph);
+        NodeGraph copy = definition.instantiate();
+        for(int i=0;i<exposed.length;++i) {
+            if(exposed[i].getHasInput()) definition.getVariable(copy,i).setValueFrom(exposed[i]);
+        }
+        return copy;
     }
 
-    private void addToPairs(NodeVariable<?> v) {
-        VariablePair p = new VariablePair(v);
-        pairs.add(p);
+    /**
+     * @return true if this {@link Subgraph} has made its own inner graph.
+     */
+    boolean hasInnerGraph() {
+        return graph!=null;
     }
 
-    public NodeGraph getGraph() {
+    private NodeGraph materialize() {
+        if(graph==null) {
+            NodeGraph g = definition.instantiate();
+            NodeVariable<?>[] vars = new NodeVariable<?>[exposed.length];
+            for(int i=0;i<vars.length;++i) {
+                vars[i] = definition.getVariable(g,i);
+                if(exposed[i].getHasInput()) vars[i].setValueFrom(exposed[i]);
+            }
+            inner = vars;
+            graph = g;
+        }
         return graph;
     }
 
@@ -107,28 +227,204 @@ public class Subgraph extends Node implements SupergraphInput, SupergraphOutput,
         return new Subgraph();
     }
 
+    /**
+     * Caching is off until this is called.  Copies of this {@link Subgraph} share the same cache.
+     * @param cache where to remember the outputs of {@link #update()}, or null to always run the inner graph.
+     */
+    public void setResultCache(SubgraphCache cache) {
+        resultCache = cache;
+    }
+
+    public SubgraphCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Copies the inputs that changed into the inner graph, runs the inner graph unless the {@link SubgraphCache}
+     * already has the outputs, and publishes the outputs that changed.  If no input changed and nothing inside
+     * changed either then the inner graph is not visited at all, so an idle {@link Subgraph} costs one check per
+     * input no matter how large or deeply nested it is.  The shared inner graph of the definition is used when it can
+     * be, otherwise the inner graph is made from the definition the first time it has to run, and keeps its
+     * {@link ExecutionPlan} between updates.
+     */
     @Override
     public void update() {
-        for(VariablePair p : pairs) {
-            if(p.superVariable.getHasInput()) {
-                if (p.superVariable.getIsDirty()) {
-                    p.subVariable.setValue(p.superVariable.getValue());
-                }
+        boolean changed = (graph==null) ? (!evaluated || hasDirtyInput()) : copyInputs() || graph.hasPendingWork();
+        if(!changed) {
+            cleanAllInputs();
+            return;
+        }
+
+        SubgraphCache cache = resultCache;
+        ValueKey key = (cache==null) ? null : getResultKey(true);
+        Object[] outputs = (key==null) ? null : cache.get(key);
+        if(outputs==null) {
+            outputs = run();
+            if(key!=null) cache.put(key,outputs);
+        } else if(graph!=null) {
+            // the current inputs were served, the inner graph has nothing left to do until they change.
+            graph.clearPendingWork();
+            innerIsStale = true;
+        }
+        publishOutputs(outputs);
+        evaluated = true;
+        cleanAllInputs();
+    }
+
+    /**
+     * @return the outputs of the inner graph for the current inputs.
+     */
+    private Object[] run() {
+        if(graph==null && definition.canShare()) return definition.evaluate(exposed);
+
+        NodeGraph g = materialize();
+        if(innerIsStale) g.markAllDirty();
+        innerIsStale = false;
+        g.update();
+        return collectOutputs();
+    }
+
+    private boolean hasDirtyInput() {
+        for(NodeVariable<?> v : exposed) {
+            if(v.getHasInput() && v.getIsDirty()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if any input crossed into the inner graph.
+     */
+    private boolean copyInputs() {
+        boolean crossed = false;
+        for(int i=0;i<exposed.length;++i) {
+            if(!exposed[i].getHasInput() || !exposed[i].getIsDirty()) continue;
+            if(!inner[i].hasSameValueAs(exposed[i])) {
+                inner[i].setValueFrom(exposed[i]);
+                crossed = true;
+            }
+        }
+        return crossed;
+    }
+
+    private Object[] collectOutputs() {
+        List<Object> list = new ArrayList<>();
+        for(int i=0;i<exposed.length;++i) {
+            if(exposed[i].getHasOutput()) list.add(GraphCopier.copyValue(inner[i].getValue()));
+        }
+        return list.toArray();
+    }
+
+    private void publishOutputs(Object[] outputs) {
+        int i=0;
+        for(NodeVariable<?> v : exposed) {
+            if(!v.getHasOutput()) continue;
+            Object value = outputs[i++];
+            if(!Objects.equals(value,v.getValue())) {
+                v.setValue(GraphCopier.copyValue(value));
             }
-            if(p.superVariable.getHasOutput()) {
-                if (p.subVariable.getIsDirty()) {
-                    p.superVariable.setValue(p.subVariable.getValue());
-                }
+        }
+    }
+
+    /**
+     * @param withInputs true to include the values of the inputs.  The inputs of a nested {@link Subgraph} are
+     *                   already part of the key of the {@link Subgraph} around it.
+     * @return the address of the current result of the inner graph in a {@link SubgraphCache}, or null if it can not
+     * be cached.
+     */
+    private ValueKey getResultKey(boolean withInputs) {
+        Object[] content;
+        if(graph==null) {
+            // the inner graph would be a copy of the definition.
+            content = definition.getContent();
+        } else {
+            Structure s = describe();
+            content = (s==null) ? null : s.getContent();
+        }
+        if(content==null) return null;
+
+        List<Object> values = new ArrayList<>(content.length+exposed.length);
+        values.addAll(Arrays.asList(content));
+        if(withInputs) {
+            for(NodeVariable<?> v : exposed) {
+                if(v.getHasInput() && !addValue(values,v)) return null;
             }
         }
+        return new ValueKey(values.toArray());
+    }
 
-        graph.update();
-        cleanAllInputs();
+    private static boolean addValue(List<Object> values,NodeVariable<?> v) {
+        Object value = v.getValue();
+        if(!ValueKey.canCompare(value)) return false;
+        values.add(GraphCopier.copyValue(value));
+        return true;
+    }
+
+    /**
+     * Rebuild {@link #structure} if the topology of the inner graph changed.
+     * @return the structure of the inner graph, or null if it can not be cached.
+     */
+    private Structure describe() {
+        ExecutionPlan p = graph.getExecutionPlan();
+        if(p!=describedPlan) {
+            describedPlan = p;
+            List<NodeVariable<?>> inputs = new ArrayList<>();
+            for(int i=0;i<exposed.length;++i) {
+                if(exposed[i].getHasInput()) inputs.add(inner[i]);
+            }
+            structure = describe(graph,inputs);
+        }
+        return structure;
+    }
+
+    /**
+     * @param graph the graph.
+     * @param inputs the variables of the graph that are fed from outside.
+     * @return the structure of the graph, or null if it can not be cached.
+     */
+    static Structure describe(NodeGraph graph,Collection<NodeVariable<?>> inputs) {
+        List<Node> nodes = graph.getNodes();
+        List<NodeConnection> connections = graph.getConnections();
+        Map<Node,Integer> index = new IdentityHashMap<>();
+        for(int i=0;i<nodes.size();++i) index.put(nodes.get(i),i);
+
+        List<Object> parts = new ArrayList<>();
+        Set<NodeVariable<?>> fed = Collections.newSetFromMap(new IdentityHashMap<>());
+        fed.addAll(inputs);
+        for(NodeConnection c : connections) {
+            Integer from = index.get(c.getInNode());
+            Integer to = index.get(c.getOutNode());
+            if(from==null || to==null) return null;
+            parts.add(from);
+            parts.add(c.getInVariableIndex());
+            parts.add(to);
+            parts.add(c.getOutVariableIndex());
+            fed.add(c.getOutNode().getVariable(c.getOutVariableIndex()));
+        }
+
+        List<NodeVariable<?>> free = new ArrayList<>();
+        List<Subgraph> inner = new ArrayList<>();
+        for(Node n : nodes) {
+            if(n instanceof Subgraph) inner.add((Subgraph)n);
+            else if(!(n instanceof PureNode)) return null;
+            parts.add(n.getClass());
+            parts.add(n.getNumVariables());
+            boolean hasInputs = false;
+            for(NodeVariable<?> v : n.getVariables()) hasInputs |= v.getHasInput();
+            for(NodeVariable<?> v : n.getVariables()) {
+                parts.add(v.getName());
+                parts.add(v.getHasInput());
+                parts.add(v.getHasOutput());
+                // the outputs of a node with inputs are computed from them.
+                if(!fed.contains(v) && (v.getHasInput() || !hasInputs)) free.add(v);
+            }
+        }
+        return new Structure(new ValueKey(parts.toArray()),free.toArray(new NodeVariable<?>[0]),inner.toArray(new Subgraph[0]));
     }
 
     @Override
     public void print(Graphics g) {
-        for(Node n : this.graph.getNodes()) {
+        if(graph==null && !definition.hasPrinters()) return;
+        for(Node n : materialize().getNodes()) {
             if(n instanceof PrintWithGraphics) {
                 ((PrintWithGraphics)n).print(g);
             }
@@ -0,0 +1,103 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * {@link SubgraphCache} remembers the outputs of {@link Subgraph}s.  Each entry is addressed by the structure of the
+ * inner graph and every value that can change its result, so {@link Subgraph}s with the same contents share entries no
+ * matter which instance, graph or update made them.  A {@link Subgraph} whose inner graph has anything other than
+ * {@link PureNode}s and other {@link Subgraph}s is never cached.
+ * <p>Caching is opt-in: a {@link Subgraph} only uses a cache given to it with
+ * {@link Subgraph#setResultCache(SubgraphCache)}, and copies of it share that cache.  A cache lives as long as the
+ * {@link Subgraph}s that point at it, so the owner of a graph can make one cache per graph and drop it with the graph.
+ * {@link #getShared()} is one cache for the whole JVM that is never dropped; its entries stay until they are evicted or
+ * {@link #clear()} is called.  Each cache holds at most {@link #getCapacity()} entries and forgets the least recently
+ * used one first.  Safe to use from any thread.</p>
+ */
+public class SubgraphCache {
+    /**
+     * The capacity of {@link #getShared()}.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final SubgraphCache shared = new SubgraphCache(DEFAULT_CAPACITY);
+
+    private final LruCache<ValueKey,Object[]> entries;
+
+    /**
+     * @param capacity the most entries to keep.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    public SubgraphCache(int capacity) throws IllegalArgumentException {
+        entries = new LruCache<>(capacity);
+    }
+
+    /**
+     * @return one cache for the whole JVM, for {@link Subgraph}s in different graphs to share.  It lives as long as the
+     * JVM and is only emptied by eviction or {@link #clear()}.  No {@link Subgraph} uses it unless told to.
+     */
+    public static SubgraphCache getShared() {
+        return shared;
+    }
+
+    Object[] get(ValueKey key) {
+        return entries.get(key);
+    }
+
+    void put(ValueKey key,Object[] outputs) {
+        entries.put(key,outputs);
+    }
+
+    /**
+     * @param capacity the most entries to keep.  Entries over the new capacity are forgotten now.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    public void setCapacity(int capacity) throws IllegalArgumentException {
+        entries.setCapacity(capacity);
+    }
+
+    public int getCapacity() {
+        return entries.getCapacity();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of updates that did not have to run the inner graph.
+     */
+    public long getHitCount() {
+        return entries.getHitCount();
+    }
+
+    /**
+     * @return the number of updates that had to run the inner graph.
+     */
+    public long getMissCount() {
+        return entries.getMissCount();
+    }
+
+    /**
+     * @return the number of entries forgotten to stay within the capacity.
+     */
+    public long getEvictionCount() {
+        return entries.getEvictionCount();
+    }
+
+    /**
+     * Forget every entry and reset the counters.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "SubgraphCache{" +
+                "size=" + size() +
+                ", capacity=" + getCapacity() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
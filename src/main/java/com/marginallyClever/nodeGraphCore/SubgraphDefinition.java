@@ -0,0 +1,207 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The contents of a {@link Subgraph}, shared by every {@link Subgraph} copied from it.  A {@link SubgraphDefinition}
+ * holds one copy of the inner graph, the layout of the variables it exposes to the supergraph, and the part of the
+ * {@link SubgraphCache} key that does not depend on the inputs.  Its structure never changes after it is made and it
+ * can be shared between threads.
+ * <p>If every {@link Node} of the inner graph is a {@link PureNode} or a {@link Subgraph} that can share its own
+ * definition then the result only depends on the inputs.  Each {@link Subgraph} then holds nothing but its exposed
+ * variables, and runs the one shared copy with {@link #evaluate(NodeVariable[])}.  Otherwise each {@link Subgraph}
+ * makes a copy of its own the first time it runs.  A {@link Subgraph} also makes a copy of its own when
+ * {@link Subgraph#getGraph()} is called.</p>
+ */
+public final class SubgraphDefinition {
+    /**
+     * The definition of an empty {@link Subgraph}.
+     */
+    static final SubgraphDefinition EMPTY = new SubgraphDefinition(new NodeGraph());
+
+    /**
+     * The inner graph.  Its structure never changes and it is never handed out.  {@link #evaluate(NodeVariable[])}
+     * changes its values.
+     */
+    private final NodeGraph template;
+
+    /**
+     * The variables exposed to the supergraph, in order, as the index of the {@link Node} in the template and the
+     * index of the variable in the {@link Node}.
+     */
+    private final int[] pairNode, pairVariable;
+
+    private final boolean hasPrinters;
+
+    /**
+     * True if the result of the template only depends on its inputs.
+     */
+    private final boolean canShare;
+
+    /**
+     * The values that decide the result of the template besides the inputs, or null if it can not be cached.
+     */
+    private final Object[] content;
+
+    private SubgraphDefinition(NodeGraph template) {
+        this.template = template;
+        List<Node> nodes = template.getNodes();
+
+        List<int[]> pairs = new ArrayList<>();
+        boolean printers = false;
+        boolean pure = true;
+        for(int i=0;i<nodes.size();++i) {
+            Node n = nodes.get(i);
+            extractSupergraphInputs(n,i,pairs);
+            extractSupergraphOutputs(n,i,pairs);
+            if(n instanceof Subgraph) {
+                SubgraphDefinition inner = ((Subgraph)n).getDefinition();
+                printers |= inner.hasPrinters();
+                pure &= inner.canShare();
+            } else {
+                printers |= (n instanceof PrintWithGraphics);
+                pure &= (n instanceof PureNode);
+            }
+        }
+        hasPrinters = printers;
+        canShare = pure && !printers;
+        template.setCompilePureNodes(true);
+
+        // sort the pairs.
+        pairs.sort((a,b)->sortVariables(variableOf(a),variableOf(b)));
+        pairNode = new int[pairs.size()];
+        pairVariable = new int[pairs.size()];
+        List<NodeVariable<?>> inputs = new ArrayList<>();
+        for(int i=0;i<pairs.size();++i) {
+            pairNode[i] = pairs.get(i)[0];
+            pairVariable[i] = pairs.get(i)[1];
+            NodeVariable<?> v = getTemplateVariable(i);
+            if(v.getHasOutput()) inputs.add(v);
+        }
+
+        Subgraph.Structure s = Subgraph.describe(template,inputs);
+        content = (s==null) ? null : s.getContent();
+    }
+
+    /**
+     * @param graph the inner graph.  A copy is kept, later changes to the graph are not seen.
+     * @return a new definition.
+     */
+    public static SubgraphDefinition of(NodeGraph graph) {
+        return new SubgraphDefinition(GraphCopier.copy(graph));
+    }
+
+    private void extractSupergraphOutputs(Node n,int index,List<int[]> pairs) {
+        if(n instanceof SupergraphOutput) {
+            for(int i=0;i<n.getNumVariables();++i) {
+                NodeVariable<?> v = n.getVariable(i);
+                if(v.getHasInput()) {
+                    pairs.add(new int[]{index,i});
+                }
+            }
+        }
+    }
+
+    private void extractSupergraphInputs(Node n,int index,List<int[]> pairs) {
+        if(n instanceof SupergraphInput) {
+            for(int i=0;i<n.getNumVariables();++i) {
+                NodeVariable<?> v = n.getVariable(i);
+                if(v.getHasOutput()) {
+                    pairs.add(new int[]{index,i});
+                }
+            }
+        }
+    }
+
+    private int sortVariables(NodeVariable<?> a, NodeVariable<?> b) {
+        // all input first
+        int aIn = (a.getHasInput())?1:0;
+        int bIn = (b.getHasInput())?1:0;
+        if(aIn != bIn) return aIn-bIn;
+        // then sort by name alphabetically
+        return a.getName().compareTo(b.getName());
+    }
+
+    private NodeVariable<?> variableOf(int[] pair) {
+        return template.getNodes().get(pair[0]).getVariable(pair[1]);
+    }
+
+    /**
+     * @return the number of {@link Node}s in the inner graph.
+     */
+    public int getNodeCount() {
+        return template.getNodes().size();
+    }
+
+    int getPairCount() {
+        return pairNode.length;
+    }
+
+    /**
+     * @param pair the index of an exposed variable.
+     * @return the variable inside the template.  Do not change it.
+     */
+    NodeVariable<?> getTemplateVariable(int pair) {
+        return template.getNodes().get(pairNode[pair]).getVariable(pairVariable[pair]);
+    }
+
+    /**
+     * @param graph a copy made by {@link #instantiate()}.
+     * @param pair the index of an exposed variable.
+     * @return the variable inside the copy.
+     */
+    NodeVariable<?> getVariable(NodeGraph graph,int pair) {
+        return graph.getNodes().get(pairNode[pair]).getVariable(pairVariable[pair]);
+    }
+
+    boolean hasPrinters() {
+        return hasPrinters;
+    }
+
+    /**
+     * @return true if {@link Subgraph}s can run the shared copy with {@link #evaluate(NodeVariable[])} instead of
+     * making their own.
+     */
+    boolean canShare() {
+        return canShare;
+    }
+
+    /**
+     * @return the values that decide the result of the inner graph besides the inputs, or null if it can not be
+     * cached.  Do not change the array.
+     */
+    Object[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return a new copy of the inner graph.
+     */
+    synchronized NodeGraph instantiate() {
+        NodeGraph graph = GraphCopier.copy(template);
+        graph.setCompilePureNodes(true);
+        return graph;
+    }
+
+    /**
+     * Runs the shared copy of the inner graph with the inputs of one {@link Subgraph}.  Only the {@link Node}s
+     * downstream of inputs that differ from the last call are visited.  Only call this if {@link #canShare()}.
+     * @param exposed the variables a {@link Subgraph} exposes to the supergraph, in order.  They are not changed.
+     * @return copies of the values of the outputs, in order.
+     */
+    synchronized Object[] evaluate(NodeVariable<?>[] exposed) {
+        for(int i=0;i<exposed.length;++i) {
+            if(!exposed[i].getHasInput()) continue;
+            NodeVariable<?> v = getTemplateVariable(i);
+            if(!v.hasSameValueAs(exposed[i])) v.setValueFrom(exposed[i]);
+        }
+        template.update();
+
+        List<Object> outputs = new ArrayList<>();
+        for(int i=0;i<exposed.length;++i) {
+            if(exposed[i].getHasOutput()) outputs.add(GraphCopier.copyValue(getTemplateVariable(i).getValue()));
+        }
+        return outputs.toArray();
+    }
+}
@@ -0,0 +1,32 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.ArrayList;
+import java.util.function.UnaryOperator;
+
+/**
+ * An {@link ArrayList} that counts every change to its contents, including the ones made directly through
+ * {@link NodeGraph#getNodes()} and {@link NodeGraph#getConnections()}: adds, removes, sorts and replacements.
+ * {@link NodeGraph} compares the count to know when its {@link ExecutionPlan} is out of date.
+ * @param <E> the type of element.
+ */
+class TrackedList<E> extends ArrayList<E> {
+    /**
+     * @return a number that changes every time the contents of this list change.
+     */
+    int getModCount() {
+        return modCount;
+    }
+
+    @Override
+    public E set(int index,E element) {
+        E old = super.set(index,element);
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        super.replaceAll(operator);
+        modCount++;
+    }
+}
@@ -0,0 +1,74 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the unique IDs of the {@link Node}s in one {@link NodeGraph}.  IDs are 64 bit, start at 1, and are never
+ * handed out twice, even to {@link Node}s made on different threads at the same time.
+ * <p>Each thread reserves a block of {@link #BLOCK_SIZE} IDs at a time and hands them out without touching shared
+ * state, so making many {@link Node}s in parallel does not fight over one counter.  IDs that came from somewhere else,
+ * such as a file, are reported with {@link #observe(long)} and are never handed out after that.  A thread with one
+ * ID to make sees the same numbers as before: 1, 2, 3 and so on, continuing after the largest ID observed.</p>
+ */
+public class UniqueIDAllocator {
+    /**
+     * How many IDs each thread reserves at once.
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    /**
+     * The first ID not reserved by any thread.
+     */
+    private final AtomicLong next = new AtomicLong(1);
+
+    /**
+     * The largest ID observed.
+     */
+    private final AtomicLong largestObserved = new AtomicLong(0);
+
+    /**
+     * Changes on every {@link #reset()}, so that blocks reserved before then are dropped.
+     */
+    private volatile int generation = 0;
+
+    /**
+     * The block of each thread: the next ID, the end of the block, and the generation it was reserved in.
+     */
+    private final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(()->new long[3]);
+
+    /**
+     * @return a new ID, never 0.
+     */
+    public long next() {
+        long [] block = blocks.get();
+        // IDs above the largest observed ID and not yet handed out by this thread are still free.
+        long id = Math.max(block[0],largestObserved.get()+1);
+        if(id>=block[1] || block[2]!=generation) {
+            block[2] = generation;
+            long start = next.getAndAdd(BLOCK_SIZE);
+            block[1] = start+BLOCK_SIZE;
+            id = Math.max(start,largestObserved.get()+1);
+            if(id>=block[1]) return next();
+        }
+        block[0] = id+1;
+        return id;
+    }
+
+    /**
+     * Report an ID that was not made by {@link #next()}.  It will never be handed out.
+     * @param id the ID in use.
+     */
+    public void observe(long id) {
+        if(largestObserved.get()<id) largestObserved.accumulateAndGet(id,Math::max);
+        if(next.get()<=id) next.accumulateAndGet(id+1,Math::max);
+    }
+
+    /**
+     * Start again from 1.  Only call this when no {@link Node} with an ID from this allocator is still in use.
+     */
+    public void reset() {
+        generation++;
+        next.set(1);
+        largestObserved.set(0);
+    }
+}
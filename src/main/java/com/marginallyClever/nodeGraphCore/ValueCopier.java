@@ -0,0 +1,15 @@
+package com.marginallyClever.nodeGraphCore;
+
+/**
+ * {@link ValueCopier} makes an independent copy of one type of {@link NodeVariable} value for {@link GraphCopier}.
+ * Register a copier with {@link GraphCopier#registerValueCopier(Class, ValueCopier)} for any mutable type that
+ * should not be shared between a graph and its copy.
+ * @param <T> the type of value.
+ */
+public interface ValueCopier<T> {
+    /**
+     * @param value the value to copy.  Never null.
+     * @return a copy of the value, or the value itself if it can never change.
+     */
+    T copy(T value);
+}
@@ -0,0 +1,54 @@
+package com.marginallyClever.nodeGraphCore;
+
+import java.util.Arrays;
+
+/**
+ * A list of values used as the key of a cache.  Two keys are equal if their values are equal, in order.
+ */
+final class ValueKey {
+    /**
+     * true for classes whose {@link Object#equals(Object)} compares values.
+     */
+    private static final ClassValue<Boolean> comparesValues = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("equals",Object.class).getDeclaringClass() != Object.class;
+            } catch(NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final Object[] values;
+    private final int hash;
+
+    /**
+     * @param values the values, which must not change afterwards.
+     */
+    ValueKey(Object[] values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    /**
+     * @param value a value.
+     * @return true if the value is null or can be told apart from other values by {@link Object#equals(Object)}.
+     */
+    static boolean canCompare(Object value) {
+        return value==null || comparesValues.get(value.getClass());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this==o) return true;
+        if(!(o instanceof ValueKey)) return false;
+        ValueKey k = (ValueKey)o;
+        return hash==k.hash && Arrays.equals(values,k.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -1,11 +1,13 @@
 package com.marginallyClever.nodeGraphCore.builtInNodes;
 
+import com.marginallyClever.nodeGraphCore.DoubleNodeVariable;
 import com.marginallyClever.nodeGraphCore.SupergraphInput;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
+import com.marginallyClever.nodeGraphCore.PureNode;
 
-public class LoadNumber extends Node implements SupergraphInput {
-    private final NodeVariable<Number> v = NodeVariable.newInstance("value",Number.class,0,false,true);
+public class LoadNumber extends Node implements SupergraphInput, PureNode {
+    private final DoubleNodeVariable v = NodeVariable.newDoubleInstance("value",0,false,true);
 
     public LoadNumber() {
         super("LoadNumber");
@@ -1,12 +1,14 @@
 package com.marginallyClever.nodeGraphCore.builtInNodes.math;
 
+import com.marginallyClever.nodeGraphCore.DoubleNodeVariable;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
+import com.marginallyClever.nodeGraphCore.PureNode;
 
-public class ATan2 extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("X",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("Y",Number.class,0,true,false);
-    private final NodeVariable<Number> c = NodeVariable.newInstance("output",Number.class,0,false,true);
+public class ATan2 extends Node implements PureNode {
+    private final DoubleNodeVariable a = NodeVariable.newDoubleInstance("X",0,true,false);
+    private final DoubleNodeVariable b = NodeVariable.newDoubleInstance("Y",0,true,false);
+    private final DoubleNodeVariable c = NodeVariable.newDoubleInstance("output",0,false,true);
 
     public ATan2() {
         super("ATan2");
@@ -17,8 +19,8 @@ public class ATan2 extends Node {
 
     public ATan2(double y,double x) {
         this();
-        this.a.setValue(y);
-        this.b.setValue(x);
+        this.a.setDouble(y);
+        this.b.setDouble(x);
     }
 
     @Override
@@ -28,9 +30,9 @@ public class ATan2 extends Node {
 
     @Override
     public void update() {
-        double y = a.getValue().doubleValue();
-        double x = b.getValue().doubleValue();
-        c.setValue(Math.atan2(y,x));
+        double y = a.getDouble();
+        double x = b.getDouble();
+        c.setDouble(Math.atan2(y,x));
         cleanAllInputs();
     }
 }
@@ -1,12 +1,14 @@
 package com.marginallyClever.nodeGraphCore.builtInNodes.math;
 
+import com.marginallyClever.nodeGraphCore.DoubleNodeVariable;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
+import com.marginallyClever.nodeGraphCore.PureNode;
 
-public class Min extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("B",Number.class,0,true,false);
-    private final NodeVariable<Number> c = NodeVariable.newInstance("output",Number.class,0,false,true);
+public class Min extends Node implements PureNode {
+    private final DoubleNodeVariable a = NodeVariable.newDoubleInstance("A",0,true,false);
+    private final DoubleNodeVariable b = NodeVariable.newDoubleInstance("B",0,true,false);
+    private final DoubleNodeVariable c = NodeVariable.newDoubleInstance("output",0,false,true);
 
     public Min() {
         super("Min");
@@ -17,8 +19,8 @@ public class Min extends Node {
 
     public Min(double a,double b) {
         this();
-        this.a.setValue(a);
-        this.b.setValue(b);
+        this.a.setDouble(a);
+        this.b.setDouble(b);
     }
 
     @Override
@@ -28,9 +30,9 @@ public class Min extends Node {
 
     @Override
     public void update() {
-        double av = a.getValue().doubleValue();
-        double bv = b.getValue().doubleValue();
-        c.setValue(Math.min(av,bv));
+        double av = a.getDouble();
+        double bv = b.getDouble();
+        c.setDouble(Math.min(av,bv));
         cleanAllInputs();
     }
 }
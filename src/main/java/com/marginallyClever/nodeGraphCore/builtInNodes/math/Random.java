@@ -1,20 +1,21 @@
 package com.marginallyClever.nodeGraphCore.builtInNodes.math;
 
+import com.marginallyClever.nodeGraphCore.DoubleNodeVariable;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
 
 public class Random extends Node {
-    private final NodeVariable<Number> vMax = NodeVariable.newInstance("max",Number.class,0,true,false);
-    private final NodeVariable<Number> vMin = NodeVariable.newInstance("min",Number.class,0,true,false);
-    private final NodeVariable<Number> v = NodeVariable.newInstance("value",Number.class,0,false,true);
+    private final DoubleNodeVariable vMax = NodeVariable.newDoubleInstance("max",0,true,false);
+    private final DoubleNodeVariable vMin = NodeVariable.newDoubleInstance("min",0,true,false);
+    private final DoubleNodeVariable v = NodeVariable.newDoubleInstance("value",0,false,true);
 
     public Random(double top,double bottom) {
         super("Random");
         addVariable(vMax);
         addVariable(vMin);
         addVariable(v);
-        vMax.setValue(top);
-        vMin.setValue(bottom);
+        vMax.setDouble(top);
+        vMin.setDouble(bottom);
     }
 
     public Random() {
@@ -28,9 +29,9 @@ public class Random extends Node {
 
     @Override
     public void update() {
-        double a = vMin.getValue().doubleValue();
-        double b = vMax.getValue().doubleValue();
-        v.setValue(Math.random()*(b-a) + a);
+        double a = vMin.getDouble();
+        double b = vMax.getDouble();
+        v.setDouble(Math.random()*(b-a) + a);
         cleanAllInputs();
     }
 }
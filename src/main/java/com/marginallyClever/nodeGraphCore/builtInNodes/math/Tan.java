@@ -1,11 +1,13 @@
 package com.marginallyClever.nodeGraphCore.builtInNodes.math;
 
+import com.marginallyClever.nodeGraphCore.DoubleNodeVariable;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
+import com.marginallyClever.nodeGraphCore.PureNode;
 
-public class Tan extends Node {
-    private final NodeVariable<Number> a = NodeVariable.newInstance("A",Number.class,0,true,false);
-    private final NodeVariable<Number> b = NodeVariable.newInstance("output",Number.class,0,false,true);
+public class Tan extends Node implements PureNode {
+    private final DoubleNodeVariable a = NodeVariable.newDoubleInstance("A",0,true,false);
+    private final DoubleNodeVariable b = NodeVariable.newDoubleInstance("output",0,false,true);
 
     public Tan() {
         super("Tan");
@@ -15,7 +17,7 @@ public class Tan extends Node {
 
     public Tan(double a) {
         this();
-        this.a.setValue(a);
+        this.a.setDouble(a);
     }
 
     @Override
@@ -25,8 +27,8 @@ public class Tan extends Node {
 
     @Override
     public void update() {
-        double av = a.getValue().doubleValue();
-        b.setValue(Math.tan(av));
+        double av = a.getDouble();
+        b.setDouble(Math.tan(av));
         cleanAllInputs();
     }
 }
@@ -0,0 +1,38 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import com.marginallyClever.nodeGraphCore.NodeConnection;
+import jdk.jfr.*;
+
+/**
+ * One value sent across a {@link NodeConnection} during {@link com.marginallyClever.nodeGraphCore.NodeGraph#update()}.
+ */
+@Name(ConnectionTransferEvent.NAME)
+@Label("Connection Transfer")
+@Category({"NodeGraph","Evaluation"})
+@Description("One value sent across a NodeConnection")
+@StackTrace(false)
+public class ConnectionTransferEvent extends Event {
+    public static final String NAME = "com.marginallyClever.nodeGraphCore.ConnectionTransfer";
+
+    @Label("From Node")
+    private String fromNode;
+
+    @Label("From Variable")
+    private int fromVariable;
+
+    @Label("To Node")
+    private String toNode;
+
+    @Label("To Variable")
+    private int toVariable;
+
+    /**
+     * @param c the {@link NodeConnection} that sent a value.
+     */
+    public void setConnection(NodeConnection c) {
+        fromNode = c.getInNode().getUniqueName();
+        fromVariable = c.getInVariableIndex();
+        toNode = c.getOutNode().getUniqueName();
+        toVariable = c.getOutVariableIndex();
+    }
+}
@@ -0,0 +1,31 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One deep copy of a {@link com.marginallyClever.nodeGraphCore.NodeGraph} or
+ * {@link com.marginallyClever.nodeGraphCore.Node}.
+ */
+@Name(DeepCopyEvent.NAME)
+@Label("Deep Copy")
+@Category({"NodeGraph","Serialization"})
+@Description("One deep copy of a NodeGraph or Node")
+public class DeepCopyEvent extends Event {
+    public static final String NAME = "com.marginallyClever.nodeGraphCore.DeepCopy";
+
+    @Label("Subject")
+    @Description("The class that was copied")
+    private String subject;
+
+    @Label("Node Count")
+    private int nodeCount;
+
+    /**
+     * @param subject the class that was copied.
+     * @param nodeCount the number of {@link com.marginallyClever.nodeGraphCore.Node}s copied.
+     */
+    public void setSubject(Class<?> subject,int nodeCount) {
+        this.subject = subject.getSimpleName();
+        this.nodeCount = nodeCount;
+    }
+}
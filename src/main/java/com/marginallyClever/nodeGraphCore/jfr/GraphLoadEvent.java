@@ -0,0 +1,29 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import jdk.jfr.*;
+
+/**
+ * One {@link NodeGraph} read from JSON.
+ */
+@Name(GraphLoadEvent.NAME)
+@Label("Graph Load")
+@Category({"NodeGraph","Serialization"})
+@Description("One NodeGraph read from JSON")
+public class GraphLoadEvent extends Event {
+    public static final String NAME = "com.marginallyClever.nodeGraphCore.GraphLoad";
+
+    @Label("Node Count")
+    private int nodeCount;
+
+    @Label("Connection Count")
+    private int connectionCount;
+
+    /**
+     * @param graph the {@link NodeGraph} that was loaded.
+     */
+    public void setGraph(NodeGraph graph) {
+        nodeCount = graph.getNodes().size();
+        connectionCount = graph.getConnections().size();
+    }
+}
@@ -0,0 +1,29 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import jdk.jfr.*;
+
+/**
+ * One {@link NodeGraph} written to JSON.
+ */
+@Name(GraphSaveEvent.NAME)
+@Label("Graph Save")
+@Category({"NodeGraph","Serialization"})
+@Description("One NodeGraph written to JSON")
+public class GraphSaveEvent extends Event {
+    public static final String NAME = "com.marginallyClever.nodeGraphCore.GraphSave";
+
+    @Label("Node Count")
+    private int nodeCount;
+
+    @Label("Connection Count")
+    private int connectionCount;
+
+    /**
+     * @param graph the {@link NodeGraph} that was saved.
+     */
+    public void setGraph(NodeGraph graph) {
+        nodeCount = graph.getNodes().size();
+        connectionCount = graph.getConnections().size();
+    }
+}
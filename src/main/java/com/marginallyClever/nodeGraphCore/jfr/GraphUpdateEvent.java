@@ -0,0 +1,32 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import com.marginallyClever.nodeGraphCore.NodeGraph;
+import jdk.jfr.*;
+
+/**
+ * One call to {@link NodeGraph#update()}.  The start and duration of the event are the beginning and end of the tick.
+ */
+@Name(GraphUpdateEvent.NAME)
+@Label("Graph Update")
+@Category({"NodeGraph","Evaluation"})
+@Description("One call to NodeGraph.update()")
+@StackTrace(false)
+public class GraphUpdateEvent extends Event {
+    public static final String NAME = "com.marginallyClever.nodeGraphCore.GraphUpdate";
+
+    @Label("Node Count")
+    private int nodeCount;
+
+    @Label("Compiled")
+    @Description("true if the graph ran as a compiled program")
+    private boolean compiled;
+
+    /**
+     * @param graph the {@link NodeGraph} that was updated.
+     * @param compiled true if the graph ran as a compiled program.
+     */
+    public void setGraph(NodeGraph graph,boolean compiled) {
+        this.nodeCount = graph.getNodes().size();
+        this.compiled = compiled;
+    }
+}
@@ -0,0 +1,42 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import jdk.jfr.Configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * Convenience methods for recording NodeGraphCore events with Java Flight Recorder.
+ * <p>The events are {@link GraphUpdateEvent}, {@link NodeUpdateEvent}, {@link ConnectionTransferEvent},
+ * {@link DeepCopyEvent}, {@link GraphSaveEvent}, and {@link GraphLoadEvent}.  The settings in {@link #SETTINGS} turn
+ * them on with thresholds that keep only the slow ones.</p>
+ */
+public class NodeGraphFlightRecorder {
+    /**
+     * The name of the settings file shipped in this package.
+     */
+    public static final String SETTINGS = "nodegraph.jfc";
+
+    /**
+     * Reads the shipped settings.  Use them to start a {@link jdk.jfr.Recording}, alone or on top of the JDK defaults:
+     * <pre>
+     * Map&lt;String,String&gt; settings = new HashMap&lt;&gt;(Configuration.getConfiguration("default").getSettings());
+     * settings.putAll(NodeGraphFlightRecorder.getConfiguration().getSettings());
+     * Recording r = new Recording(settings);
+     * </pre>
+     * @return the NodeGraphCore {@link Configuration}.
+     * @throws IOException if the settings cannot be read.
+     * @throws ParseException if the settings are not valid.
+     */
+    public static Configuration getConfiguration() throws IOException, ParseException {
+        InputStream stream = NodeGraphFlightRecorder.class.getResourceAsStream(SETTINGS);
+        if(stream==null) throw new IOException(SETTINGS+" not found");
+        try(Reader reader = new InputStreamReader(stream,StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+}
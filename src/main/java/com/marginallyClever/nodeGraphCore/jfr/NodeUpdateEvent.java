@@ -0,0 +1,30 @@
+package com.marginallyClever.nodeGraphCore.jfr;
+
+import com.marginallyClever.nodeGraphCore.Node;
+import jdk.jfr.*;
+
+/**
+ * One {@link Node#update()} run by {@link com.marginallyClever.nodeGraphCore.NodeGraph#update()}.
+ */
+@Name(NodeUpdateEvent.NAME)
+@Label("Node Update")
+@Category({"NodeGraph","Evaluation"})
+@Description("One Node.update() during a graph update")
+@StackTrace(false)
+public class NodeUpdateEvent extends Event {
+    public static final String NAME = "com.marginallyClever.nodeGraphCore.NodeUpdate";
+
+    @Label("Node Type")
+    private String nodeType;
+
+    @Label("Unique Name")
+    private String uniqueName;
+
+    /**
+     * @param n the {@link Node} that was updated.
+     */
+    public void setNode(Node n) {
+        nodeType = n.getClass().getName();
+        uniqueName = n.getUniqueName();
+    }
+}
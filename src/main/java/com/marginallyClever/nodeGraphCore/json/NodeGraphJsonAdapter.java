@@ -2,47 +2,101 @@ package com.marginallyClever.nodeGraphCore.json;
 
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.marginallyClever.nodeGraphCore.JSONHelper;
 import com.marginallyClever.nodeGraphCore.Node;
-import com.marginallyClever.nodeGraphCore.NodeConnection;
 import com.marginallyClever.nodeGraphCore.NodeGraph;
+import com.marginallyClever.nodeGraphCore.jfr.GraphLoadEvent;
+import com.marginallyClever.nodeGraphCore.jfr.GraphSaveEvent;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.List;
 
 /**
+ * Reads and writes a {@link NodeGraph} straight from and to the stream, one {@link Node} and one
+ * {@link com.marginallyClever.nodeGraphCore.NodeConnection} at a time, so the whole document is never held in memory.
+ * The format is the same as the old tree based adapter.
  * @author Ollie
  * @since 2022-02-23
  */
-public class NodeGraphJsonAdapter implements JsonSerializer<NodeGraph>, JsonDeserializer<NodeGraph> {
+public class NodeGraphJsonAdapter extends TypeAdapter<NodeGraph> {
 
     public static final Type nodeType = TypeToken.getParameterized(ArrayList.class, Node.class).getType();
 
+    private final NodeJsonAdapter nodeAdapter = new NodeJsonAdapter();
+
     @Override
-    public JsonElement serialize(NodeGraph nodeGraph, Type type, JsonSerializationContext context) {
-        JsonObject jsonObject = new JsonObject();
+    public void write(JsonWriter out, NodeGraph nodeGraph) throws IOException {
+        if(nodeGraph == null) {
+            out.nullValue();
+            return;
+        }
+        GraphSaveEvent event = new GraphSaveEvent();
+        event.begin();
+
+        out.beginObject();
+        out.name("nodes");
+        out.beginArray();
+        for(Node n : nodeGraph.getNodes()) {
+            nodeAdapter.write(out, n);
+        }
+        out.endArray();
+        out.name("connections");
+        JSONHelper.writeNodeConnections(out, nodeGraph.getConnections());
+        out.endObject();
 
-        JsonElement nodes = context.serialize(nodeGraph.getNodes(), nodeType);
-        jsonObject.add("nodes", nodes);
-        jsonObject.add("connections", JSONHelper.serializeNodeConnections(nodeGraph.getConnections()));
-        return jsonObject;
+        if(event.shouldCommit()) {
+            event.setGraph(nodeGraph);
+            event.commit();
+        }
     }
 
     @Override
-    public NodeGraph deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject jsonObject = jsonElement.getAsJsonObject();
+    public NodeGraph read(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        GraphLoadEvent event = new GraphLoadEvent();
+        event.begin();
 
         NodeGraph nodeGraph = new NodeGraph();
+        boolean hasNodes = false;
+        // connections name their nodes, so they can only be made once the nodes are in.
+        JsonElement earlyConnections = null;
 
-        List<Node> nodes = context.deserialize(jsonObject.get("nodes"), nodeType);
-        nodes.forEach(nodeGraph::add);
+        in.beginObject();
+        while(in.hasNext()) {
+            switch(in.nextName()) {
+                case "nodes":
+                    in.beginArray();
+                    while(in.hasNext()) {
+                        Node n = nodeAdapter.read(in);
+                        if(n != null) nodeGraph.add(n);
+                    }
+                    in.endArray();
+                    hasNodes = true;
+                    break;
+                case "connections":
+                    if(hasNodes) JSONHelper.readNodeConnections(in, nodeGraph);
+                    else earlyConnections = JsonParser.parseReader(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
 
-        JSONHelper.deserializeNodeConnections(jsonObject.get("connections"), nodeGraph);
-
-        nodeGraph.bumpUpIndexableID();
+        if(earlyConnections != null) JSONHelper.deserializeNodeConnections(earlyConnections, nodeGraph);
 
+        if(event.shouldCommit()) {
+            event.setGraph(nodeGraph);
+            event.commit();
+        }
         return nodeGraph;
     }
-
 }
@@ -1,43 +1,98 @@
 package com.marginallyClever.nodeGraphCore.json;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeFactory;
 import com.marginallyClever.nodeGraphCore.JSONHelper;
 
 import java.awt.*;
-import java.lang.reflect.Type;
+import java.io.IOException;
 
 /**
+ * Reads and writes one {@link Node} straight from and to the stream.  The format is the same as the old tree based
+ * adapter.  Fields may arrive in any order, but {@code name} should come first so {@code variables} can be read
+ * straight into the new {@link Node}.
  * @author Ollie
  * @since 2022-02-23
  */
-public class NodeJsonAdapter implements JsonSerializer<Node>, JsonDeserializer<Node> {
+public class NodeJsonAdapter extends TypeAdapter<Node> {
 
     @Override
-    public JsonElement serialize(Node node, Type type, JsonSerializationContext context) {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("name", node.getName());
-        jsonObject.addProperty("uniqueID", node.getUniqueID());
-        jsonObject.addProperty("label", node.getLabel());
-        jsonObject.add("bounds", context.serialize(node.getRectangle(), Rectangle.class));
-        jsonObject.add("variables", JSONHelper.serializeNodeVariables(node.getVariables()));
-        return jsonObject;
+    public void write(JsonWriter out, Node node) throws IOException {
+        if(node == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("name").value(node.getName());
+        out.name("uniqueID").value(node.getUniqueID());
+        out.name("label").value(node.getLabel());
+        out.name("bounds");
+        JSONHelper.getDefaultGson().getAdapter(Rectangle.class).write(out, node.getRectangle());
+        out.name("variables");
+        JSONHelper.writeNodeVariables(out, node.getVariables());
+        out.endObject();
     }
 
     @Override
-    public Node deserialize(JsonElement jsonElement, Type type, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject jsonObject = jsonElement.getAsJsonObject();
-        String name = jsonObject.get("name").getAsString();
-
-        Node node = NodeFactory.createNode(name);
-        if(node != null){
-            node.setUniqueID(jsonObject.get("uniqueID").getAsInt());
-            node.setLabel(jsonObject.get("label").getAsString());
-            node.setRectangle(context.deserialize(jsonObject.get("bounds"), Rectangle.class));
-            JSONHelper.deserializeNodeVariables(node.getVariables(), jsonObject.get("variables"));
-            return node;
+    public Node read(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        Node node = null;
+        boolean unknown = false;
+        Long uniqueID = null;
+        String label = null;
+        Rectangle bounds = null;
+        JsonElement variables = null;
+
+        in.beginObject();
+        while(in.hasNext()) {
+            switch(in.nextName()) {
+                case "name":
+                    node = NodeFactory.createNode(in.nextString());
+                    unknown = (node == null);
+                    break;
+                case "uniqueID":
+                    uniqueID = in.nextLong();
+                    break;
+                case "label":
+                    label = readNullableString(in);
+                    break;
+                case "bounds":
+                    bounds = JSONHelper.getDefaultGson().getAdapter(Rectangle.class).read(in);
+                    break;
+                case "variables":
+                    if(node != null) JSONHelper.readNodeVariables(in, node.getVariables());
+                    else if(unknown) in.skipValue();
+                    else variables = JsonParser.parseReader(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if(node == null) return null;
+
+        if(uniqueID != null) node.setUniqueID(uniqueID);
+        if(label != null) node.setLabel(label);
+        if(bounds != null) node.setRectangle(bounds);
+        if(variables != null) JSONHelper.deserializeNodeVariables(node.getVariables(), variables);
+        return node;
+    }
+
+    private String readNullableString(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
         }
-        return null;
+        return in.nextString();
     }
 }
@@ -1,6 +1,6 @@
 package com.marginallyClever.nodeGraphSwing;
 
-import com.marginallyClever.nodeGraphCore.JSONHelper;
+import com.marginallyClever.nodeGraphCore.GraphCopier;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeFactory;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
@@ -45,7 +45,7 @@ public class NodeEditPanel extends JPanel {
         c.fill = GridBagConstraints.HORIZONTAL;
 
         addReadOnlyField(c,"Type",node.getName());
-        addReadOnlyField(c,"ID",Integer.toString(node.getUniqueID()));
+        addReadOnlyField(c,"ID",Long.toString(node.getUniqueID()));
         addLabelField(c);
 
         for(int i=0;i<node.getNumVariables();++i) {
@@ -98,7 +98,7 @@ public class NodeEditPanel extends JPanel {
     }
 
     private static Node deepCopy(Node subject) {
-        return JSONHelper.deepCopy(subject);
+        return GraphCopier.copy(subject);
     }
 
     public static void main(String[] args) {
@@ -10,6 +10,8 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,6 +26,11 @@ public class NodeGraphEditorPanel extends JPanel {
       */
     public static final FileNameExtensionFilter FILE_FILTER = new FileNameExtensionFilter("Node Graph","graph");
 
+    /**
+     * Used by save and load actions for graphs saved by {@link BinaryHelper}.
+     */
+    public static final FileNameExtensionFilter BINARY_FILE_FILTER = new FileNameExtensionFilter("Node Graph (binary)","ngb");
+
     private static final Color CONNECTION_POINT_COLOR_SELECTED = Color.RED;
     private static final double NEARBY_CONNECTION_DISTANCE_MAX = 20;
 
@@ -37,6 +44,11 @@ public class NodeGraphEditorPanel extends JPanel {
      */
     private final NodeGraphViewPanel paintArea;
 
+    /**
+     * The binary file that {@link #model} is being loaded from as it scrolls into view, or null.
+     */
+    private LazyGraphFile lazyFile;
+
     /**
      * The currently selected nodes for group operations
      */
@@ -100,14 +112,34 @@ public class NodeGraphEditorPanel extends JPanel {
     private final Point popupPoint = new Point();
 
     /**
-     * Default constructor
+     * Default constructor.  The concurrent mode of the model is left to its owner.  This panel updates the model.
      * @param model the {@link NodeGraph} to edit.
      */
     public NodeGraphEditorPanel(NodeGraph model) {
+        this(model,false);
+    }
+
+    /**
+     * @param model the {@link NodeGraph} to edit.
+     * @param concurrent true if the host updates the model on a worker thread while it is painted here.  This calls
+     *                   {@link NodeGraph#setConcurrent(boolean)}, after which {@link NodeGraph#getNodes()} and
+     *                   {@link NodeGraph#getConnections()} return immutable copies and every change to the model
+     *                   must go through {@link NodeGraph}.  false if this panel updates the model.
+     * <p>If the model has no {@link NodeGraph#setAsyncListener(Runnable) async listener} then this panel adds one.  It
+     * updates the model when an {@link AsyncNode} finishes, or only repaints if the
+     * host updates the model.  A listener the host already set is kept.</p>
+     */
+    public NodeGraphEditorPanel(NodeGraph model,boolean concurrent) {
         super(new BorderLayout());
         this.model = model;
+        if(concurrent) model.setConcurrent(true);
 
         paintArea = new NodeGraphViewPanel(model);
+        if(model.getAsyncListener()==null) {
+            // finished AsyncNodes are published by the next update.
+            Runnable onFinished = concurrent ? paintArea::repaint : this::update;
+            model.setAsyncListener(()->SwingUtilities.invokeLater(onFinished));
+        }
 
         this.add(toolBar,BorderLayout.NORTH);
         this.add(new JScrollPane(paintArea),BorderLayout.CENTER);
@@ -276,6 +308,7 @@ public class NodeGraphEditorPanel extends JPanel {
 
     public void update() {
         try {
+            finishLoading();
             model.update();
             paintArea.repaint();
         } catch (Exception ex) {
@@ -379,6 +412,19 @@ public class NodeGraphEditorPanel extends JPanel {
         return new Rectangle2D.Double(x1,y1,x2-x1,y2-y1);
     }
 
+    /**
+     * Tell the user that a new {@link NodeConnection} closed a feedback loop.  The connection is kept.
+     * @param from the upstream end of the new connection.
+     * @param to the downstream end of the new connection.
+     */
+    private void warnAboutFeedbackLoop(Node from,Node to) {
+        JOptionPane.showMessageDialog(this,
+                "This connection makes a feedback loop from "+from.getUniqueName()+" to "+to.getUniqueName()+".\n"
+                        +"The loop will run up to "+model.getMaxLoopIterations()+" times per update until its values settle.",
+                "Feedback loop",
+                JOptionPane.WARNING_MESSAGE);
+    }
+
     private void onClickConnectionPoint() {
         if(lastConnectionPoint == null) {
             connectionBeingCreated.disconnectAll();
@@ -400,7 +446,13 @@ public class NodeGraphEditorPanel extends JPanel {
             if(connectionBeingCreated.isValidDataType()) {
                 NodeConnection match = model.getMatchingConnection(connectionBeingCreated);
                 if(match!=null) model.remove(match);
-                else model.add(new NodeConnection(connectionBeingCreated));
+                else {
+                    Node from = connectionBeingCreated.getInNode();
+                    Node to = connectionBeingCreated.getOutNode();
+                    boolean loop = model.wouldCreateLoop(from,to);
+                    model.add(new NodeConnection(connectionBeingCreated));
+                    if(loop) warnAboutFeedbackLoop(from,to);
+                }
             } else {
                 NodeVariable<?> vIn = connectionBeingCreated.getInVariable();
                 NodeVariable<?> vOut = connectionBeingCreated.getOutVariable();
@@ -492,13 +544,47 @@ public class NodeGraphEditorPanel extends JPanel {
      * Clears the internal graph and resets everything.
      */
     public void clear() {
+        closeLazyFile();
         model.clear();
-        Node.setUniqueIDSource(0);
         connectionBeingCreated.disconnectAll();
         setSelectedNode(null);
         repaint();
     }
 
+    /**
+     * Open a graph saved by {@link BinaryHelper} into the empty editor.  {@link Node}s are read from the file as they
+     * scroll into view.
+     * @param file the file to open.
+     * @throws IOException if the file cannot be read.
+     */
+    public void openLazily(File file) throws IOException {
+        clear();
+        lazyFile = LazyGraphFile.open(file,model);
+        paintArea.setLazyFile(lazyFile);
+        repaint();
+    }
+
+    /**
+     * Read every {@link Node} that has not scrolled into view yet and release the file.  Does nothing if the graph was
+     * not opened with {@link #openLazily(File)}.
+     */
+    public void finishLoading() {
+        if(lazyFile==null) return;
+        lazyFile.loadAll();
+        closeLazyFile();
+    }
+
+    private void closeLazyFile() {
+        if(lazyFile==null) return;
+        paintArea.setLazyFile(null);
+        try {
+            lazyFile.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+        lazyFile = null;
+    }
+
     public static void main(String[] args) {
         BuiltInNodeRegistry.registerNodes();
         SwingNodeRegistry.registerNodes();
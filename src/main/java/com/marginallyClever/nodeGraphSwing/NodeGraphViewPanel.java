@@ -1,5 +1,6 @@
 package com.marginallyClever.nodeGraphSwing;
 
+import com.marginallyClever.nodeGraphCore.LazyGraphFile;
 import com.marginallyClever.nodeGraphCore.PrintWithGraphics;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeConnection;
@@ -98,6 +99,11 @@ public class NodeGraphViewPanel extends JPanel {
      */
     private final NodeGraph model;
 
+    /**
+     * If not null, {@link Node}s are read from this file as they come into view.
+     */
+    private LazyGraphFile lazyFile;
+
     /**
      * Constructs one new instance of {@link NodeGraphViewPanel}.
      * @param model the {@link NodeGraph} model to paint.
@@ -108,8 +114,17 @@ public class NodeGraphViewPanel extends JPanel {
         this.setBackground(PANEL_COLOR_BACKGROUND);
     }
 
+    /**
+     * Read {@link Node}s from a file as they come into view.
+     * @param lazyFile the file that fills the model {@link NodeGraph}, or null.
+     */
+    public void setLazyFile(LazyGraphFile lazyFile) {
+        this.lazyFile = lazyFile;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
+        if(lazyFile!=null) lazyFile.loadArea(getVisibleRect());
         updatePaintAreaBounds();
         super.paintComponent(g);
 
@@ -152,6 +167,8 @@ public class NodeGraphViewPanel extends JPanel {
             r.add(other.getMinX(),other.getMinY());
             r.add(other.getMaxX(),other.getMaxY());
         }
+        // leave room to scroll to the parts of the file not read yet.
+        if(lazyFile!=null) r.add(lazyFile.getBounds());
         Dimension d = new Dimension(r.width,r.height);
         this.setMinimumSize(d);
         this.setMaximumSize(d);
@@ -15,7 +15,7 @@ public class SwingNodeRegistry {
      * Registers Swing {@link com.marginallyClever.nodeGraphCore.Node}s for the user menu.
      */
     public static void registerNodes() {
-        NodeFactory.registerNode(new LoadImage());
-        NodeFactory.registerNode(new PrintImage());
+        NodeFactory.registerNode("LoadImage",()->new LoadImage());
+        NodeFactory.registerNode("PrintImage",()->new PrintImage());
     }
 }
@@ -1,5 +1,6 @@
 package com.marginallyClever.nodeGraphSwing.actions;
 
+import com.marginallyClever.nodeGraphCore.GraphCopier;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeConnection;
 import com.marginallyClever.nodeGraphCore.NodeGraph;
@@ -28,12 +29,10 @@ public class ActionCopyGraph extends AbstractAction implements EditAction {
     public void actionPerformed(ActionEvent e) {
         NodeGraph g = editor.getGraph();
 
-        NodeGraph modelB = new NodeGraph();
         List<Node> selectedNodes = editor.getSelectedNodes();
-        for(Node n : selectedNodes) modelB.add(n);
         List<NodeConnection> selectedConnections = g.getConnectionsBetweenTheseNodes(selectedNodes);
-        for(NodeConnection c : selectedConnections) modelB.add(c);
-        editor.setCopiedGraph(modelB.deepCopy());
+        // the selected nodes stay in the editor's graph, copy them from there.
+        editor.setCopiedGraph(GraphCopier.copy(selectedNodes,selectedConnections));
     }
 
     @Override
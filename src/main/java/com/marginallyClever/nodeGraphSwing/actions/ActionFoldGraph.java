@@ -29,8 +29,8 @@ public class ActionFoldGraph extends AbstractAction implements EditAction {
         NodeGraph preserveCopyBehaviour = editor.getCopiedGraph().deepCopy();
 
         actionCutGraph.actionPerformed(e);
-        NodeGraph justCut = editor.getCopiedGraph().deepCopy();
-        Node n = editor.getGraph().add(new Subgraph(justCut));
+        // the Subgraph keeps its own copy.
+        Node n = editor.getGraph().add(new Subgraph(editor.getCopiedGraph()));
         n.setPosition(editor.getPopupPoint());
 
         editor.setCopiedGraph(preserveCopyBehaviour);
@@ -1,15 +1,13 @@
 package com.marginallyClever.nodeGraphSwing.actions;
 
+import com.marginallyClever.nodeGraphCore.BinaryHelper;
 import com.marginallyClever.nodeGraphCore.JSONHelper;
 import com.marginallyClever.nodeGraphCore.NodeGraph;
 import com.marginallyClever.nodeGraphSwing.NodeGraphEditorPanel;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 
 /**
  * Launches a "select file to open" dialog and attempts to load the {@link NodeGraph} from disk.
@@ -27,21 +25,41 @@ public class ActionLoadGraph extends AbstractAction {
 
     @Override
     public void actionPerformed(ActionEvent e) {
+        fc.addChoosableFileFilter(NodeGraphEditorPanel.BINARY_FILE_FILTER);
         fc.setFileFilter(NodeGraphEditorPanel.FILE_FILTER);
         if (fc.showOpenDialog(SwingUtilities.getWindowAncestor(editor)) == JFileChooser.APPROVE_OPTION) {
-            editor.getGraph().add(loadModelFromFile(fc.getSelectedFile().getAbsolutePath()));
+            File file = fc.getSelectedFile();
+            if(editor.getGraph().getNodes().isEmpty() && isBinary(file)) {
+                // nothing to merge with, so only read what is on screen.
+                try {
+                    editor.openLazily(file);
+                    return;
+                } catch(IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            editor.finishLoading();
+            editor.getGraph().add(loadModelFromFile(file.getAbsolutePath()));
+        }
+    }
+
+    private boolean isBinary(File file) {
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return BinaryHelper.isBinaryGraph(in);
+        } catch(IOException e) {
+            return false;
         }
     }
 
     private NodeGraph loadModelFromFile(String absolutePath) {
         NodeGraph newModel;
-        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(absolutePath)))) {
-            StringBuilder responseStrBuilder = new StringBuilder();
-            String inputStr;
-            while ((inputStr = reader.readLine()) != null)
-                responseStrBuilder.append(inputStr);
-            newModel = JSONHelper.getDefaultGson().fromJson(responseStrBuilder.toString(), NodeGraph.class);
-        } catch(IOException e) {
+        try(BufferedInputStream in = new BufferedInputStream(new FileInputStream(absolutePath))) {
+            if(BinaryHelper.isBinaryGraph(in)) {
+                newModel = BinaryHelper.loadGraph(in);
+            } else {
+                newModel = JSONHelper.loadGraph(new BufferedReader(new InputStreamReader(in)));
+            }
+        } catch(IOException | RuntimeException e) {
             JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(editor),e.getLocalizedMessage());
             e.printStackTrace();
             newModel = new NodeGraph();
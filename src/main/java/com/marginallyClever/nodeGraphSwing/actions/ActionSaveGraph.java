@@ -1,13 +1,14 @@
 package com.marginallyClever.nodeGraphSwing.actions;
 
+import com.marginallyClever.nodeGraphCore.BinaryHelper;
 import com.marginallyClever.nodeGraphCore.JSONHelper;
 import com.marginallyClever.nodeGraphCore.NodeGraph;
 import com.marginallyClever.nodeGraphSwing.NodeGraphEditorPanel;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.event.ActionEvent;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.*;
 
 /**
  * Launches a "select file to save" dialog and attempts to save the {@link NodeGraph} to disk.
@@ -25,25 +26,38 @@ public class ActionSaveGraph extends AbstractAction {
 
     @Override
     public void actionPerformed(ActionEvent e) {
+        fc.addChoosableFileFilter(NodeGraphEditorPanel.BINARY_FILE_FILTER);
         fc.setFileFilter(NodeGraphEditorPanel.FILE_FILTER);
         if (fc.showSaveDialog(SwingUtilities.getWindowAncestor(editor)) == JFileChooser.APPROVE_OPTION) {
-            String name = addExtensionIfNeeded(fc.getSelectedFile().getAbsolutePath());
-            saveModelToFile(name);
+            boolean binary = (fc.getFileFilter() == NodeGraphEditorPanel.BINARY_FILE_FILTER)
+                    || NodeGraphEditorPanel.BINARY_FILE_FILTER.accept(fc.getSelectedFile());
+            FileNameExtensionFilter filter = binary ? NodeGraphEditorPanel.BINARY_FILE_FILTER : NodeGraphEditorPanel.FILE_FILTER;
+            String name = addExtensionIfNeeded(fc.getSelectedFile().getAbsolutePath(),filter);
+            saveModelToFile(name,binary);
         }
     }
 
-    private String addExtensionIfNeeded(String s) {
-        int last = s.lastIndexOf(".");
-        if(last != -1) {
-            String[] extensions = NodeGraphEditorPanel.FILE_FILTER.getExtensions();
+    private String addExtensionIfNeeded(String s,FileNameExtensionFilter filter) {
+        if(!filter.accept(new File(s))) {
+            String[] extensions = filter.getExtensions();
             s += "."+extensions[0];
         }
         return s;
     }
 
-    private void saveModelToFile(String absolutePath) {
-        try(BufferedWriter w = new BufferedWriter(new FileWriter(absolutePath))) {
-            w.write(JSONHelper.getDefaultGson().toJson(editor.getGraph()));
+    private void saveModelToFile(String absolutePath,boolean binary) {
+        // the file may be the one still being read.
+        editor.finishLoading();
+        try {
+            if(binary) {
+                try(OutputStream out = new BufferedOutputStream(new FileOutputStream(absolutePath))) {
+                    BinaryHelper.saveGraph(editor.getGraph(),out);
+                }
+            } else {
+                try(BufferedWriter w = new BufferedWriter(new FileWriter(absolutePath))) {
+                    JSONHelper.saveGraph(editor.getGraph(),w);
+                }
+            }
         } catch(Exception e) {
             JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(editor),e.getLocalizedMessage());
             e.printStackTrace();
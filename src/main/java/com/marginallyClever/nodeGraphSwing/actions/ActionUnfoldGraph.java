@@ -40,7 +40,7 @@ public class ActionUnfoldGraph extends AbstractAction implements EditAction {
         }
 
         for(Node n : toBeDeleted) {
-            NodeGraph inner = ((Subgraph)n).getGraph();
+            NodeGraph inner = ((Subgraph)n).copyGraph();
             // add the subgraph to this graph.
             editor.getGraph().add(inner);
             // make sure it is selected
@@ -1,5 +1,6 @@
 package com.marginallyClever.nodeGraphSwing.nodes.images;
 
+import com.marginallyClever.nodeGraphCore.AsyncNode;
 import com.marginallyClever.nodeGraphCore.Node;
 import com.marginallyClever.nodeGraphCore.NodeVariable;
 
@@ -7,13 +8,17 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
- * This {@link Node} can load a Swing {@link BufferedImage}.
+ * This {@link Node} can load a Swing {@link BufferedImage}.  The file is read on a worker thread so the graph does
+ * not wait on the disk.
  * @author Dan Royer
  * @since 2022-02-23
  */
-public class LoadImage extends Node {
+public class LoadImage extends Node implements AsyncNode {
     private final NodeVariable<String> filename = NodeVariable.newInstance("filename",String.class,null,true,false);
     private final NodeVariable<BufferedImage> contents = NodeVariable.newInstance("contents", BufferedImage.class, null,false,true);
     private final NodeVariable<Number> width = NodeVariable.newInstance("width",Number.class,0,false,true);
@@ -40,13 +45,36 @@ public class LoadImage extends Node {
     @Override
     public void update() {
         try {
-            BufferedImage image = ImageIO.read(new File(filename.getValue()));
-            contents.setValue(image);
-            width.setValue(image.getWidth());
-            height.setValue(image.getHeight());
+            publish(read(filename.getValue()));
             cleanAllInputs();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    @Override
+    public CompletableFuture<Runnable> updateAsync(Executor executor) {
+        String name = filename.getValue();
+        cleanAllInputs();
+        return CompletableFuture.supplyAsync(()->{
+            try {
+                BufferedImage image = read(name);
+                return ()->publish(image);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        },executor);
+    }
+
+    private static BufferedImage read(String name) throws IOException {
+        BufferedImage image = ImageIO.read(new File(name));
+        if(image==null) throw new IOException("Unsupported image format: "+name);
+        return image;
+    }
+
+    private void publish(BufferedImage image) {
+        contents.setValue(image);
+        width.setValue(image.getWidth());
+        height.setValue(image.getHeight());
+    }
 }
@@ -5,7 +5,12 @@
 module com.marginallyClever.NodeGraphCore {
     requires java.desktop;
     requires com.google.gson;
+    requires jdk.jfr;
 
     exports com.marginallyClever.nodeGraphCore;
+    exports com.marginallyClever.nodeGraphCore.jfr;
     exports com.marginallyClever.nodeGraphSwing;
+
+    uses com.marginallyClever.nodeGraphCore.NodeRegistry;
+    provides com.marginallyClever.nodeGraphCore.NodeRegistry with com.marginallyClever.nodeGraphCore.BuiltInNodeRegistry;
 }
\ No newline at end of file
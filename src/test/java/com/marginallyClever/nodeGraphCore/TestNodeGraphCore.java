@@ -2,16 +2,43 @@ package com.marginallyClever.nodeGraphCore;
 
 import com.google.gson.JsonElement;
 import com.marginallyClever.nodeGraphCore.builtInNodes.LoadNumber;
+import com.marginallyClever.nodeGraphCore.builtInNodes.LoadString;
 import com.marginallyClever.nodeGraphCore.builtInNodes.PrintToStdOut;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.ATan2;
 import com.marginallyClever.nodeGraphCore.builtInNodes.math.Add;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.Divide;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.Max;
 import com.marginallyClever.nodeGraphCore.builtInNodes.math.Multiply;
+import com.marginallyClever.nodeGraphCore.builtInNodes.math.Sin;
 import com.marginallyClever.nodeGraphCore.builtInNodes.math.Subtract;
+import com.marginallyClever.nodeGraphCore.jfr.*;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -69,12 +96,806 @@ public class TestNodeGraphCore {
         model.add(new NodeConnection(constant1,0,add,1));
         model.add(new NodeConnection(add,2,report,0));
 
-        model.update();
         model.update();
 
         assertEquals( 3.0, report.getVariable(0).getValue() );
     }
 
+    /**
+     * Build a long chain in reverse order and confirm one {@link NodeGraph#update()} delivers the final value.
+     */
+    @Test
+    public void testLongChainUpdatesInOnePass() {
+        int depth = 40;
+        Node [] adds = new Node[depth];
+        for(int i=depth-1;i>=0;--i) adds[i] = model.add(new Add(0,1));
+        Node constant = model.add(new LoadNumber(1));
+        model.add(new NodeConnection(constant,0,adds[0],0));
+        for(int i=1;i<depth;++i) {
+            model.add(new NodeConnection(adds[i-1],2,adds[i],0));
+        }
+
+        model.update();
+        assertEquals( 1.0+depth, adds[depth-1].getVariable(2).getValue() );
+
+        List<Node> order = model.getExecutionOrder();
+        assertTrue(order.indexOf(constant) < order.indexOf(adds[0]));
+        for(int i=1;i<depth;++i) {
+            assertTrue(order.indexOf(adds[i-1]) < order.indexOf(adds[i]));
+        }
+    }
+
+    @Test
+    public void testEditsToTheRawListsRebuildThePlan() {
+        Node a = model.add(new LoadNumber(1));
+        Node b = model.add(new LoadNumber(2));
+        assertEquals(List.of(a,b),model.getExecutionOrder());
+
+        // same size, new order.
+        model.getNodes().sort((x,y)->Long.compare(y.getUniqueID(),x.getUniqueID()));
+        assertEquals(List.of(b,a),model.getExecutionOrder());
+
+        // same size, new node.
+        Node c = new LoadNumber(3);
+        model.getNodes().set(0,c);
+        assertEquals(List.of(c,a),model.getExecutionOrder());
+    }
+
+    @Test
+    public void testEditsToTheRawListsUpdateTheIndexes() {
+        Node a = model.add(new LoadNumber(1));
+        Node b = model.add(new Add());
+        NodeConnection c = new NodeConnection(a,0,b,0);
+        model.getConnections().add(c);
+        assertEquals(List.of(c),model.getConnectionsTo(b));
+        assertEquals(List.of(c),model.getConnectionsFrom(a));
+
+        Node d = new Add();
+        model.getNodes().add(d);
+        assertSame(model,d.getParentGraph());
+        assertSame(d,model.findNodeWithUniqueID(d.getUniqueID()));
+
+        model.getConnections().remove(c);
+        model.getNodes().remove(a);
+        assertTrue(model.getConnectionsTo(b).isEmpty());
+        assertNull(model.findNodeWithUniqueID(a.getUniqueID()));
+        assertNull(a.getParentGraph());
+
+        NodeGraph other = new NodeGraph();
+        assertThrows(IllegalArgumentException.class,()->other.getNodes().add(b));
+    }
+
+    private NodeGraph buildWideGraph(int width) {
+        NodeGraph graph = new NodeGraph();
+        Node sum = graph.add(new LoadNumber(0));
+        int sumIndex = 0;
+        for(int i=0;i<width;++i) {
+            Node constant = graph.add(new LoadNumber(i));
+            Node multiply = graph.add(new Multiply());
+            Node add = graph.add(new Add());
+            graph.add(new NodeConnection(constant,0,multiply,0));
+            graph.add(new NodeConnection(constant,0,multiply,1));
+            graph.add(new NodeConnection(multiply,2,add,0));
+            graph.add(new NodeConnection(sum,sumIndex,add,1));
+            sum = add;
+            sumIndex = 2;
+        }
+        return graph;
+    }
+
+    @Test
+    public void testParallelUpdateMatchesSequential() {
+        NodeGraph sequential = buildWideGraph(200);
+        NodeGraph parallel = buildWideGraph(200);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            parallel.setExecutor(pool);
+            sequential.update();
+            parallel.update();
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Node> a = sequential.getNodes();
+        List<Node> b = parallel.getNodes();
+        for(int i=0;i<a.size();++i) {
+            for(int j=0;j<a.get(i).getNumVariables();++j) {
+                assertEquals(a.get(i).getVariable(j).getValue(), b.get(i).getVariable(j).getValue());
+            }
+        }
+        // sum of squares 0..199
+        assertEquals(2646700.0, a.get(a.size()-1).getVariable(2).getValue());
+    }
+
+    /**
+     * An {@link Add} that counts how many times it has been updated.
+     */
+    private static class CountingAdd extends Add {
+        public int count=0;
+
+        @Override
+        public void update() {
+            count++;
+            super.update();
+        }
+    }
+
+    @Test
+    public void testOnlyChangedNodesUpdate() {
+        LoadNumber [] constants = new LoadNumber[10];
+        CountingAdd [] adds = new CountingAdd[10];
+        for(int i=0;i<10;++i) {
+            constants[i] = (LoadNumber)model.add(new LoadNumber(i));
+            adds[i] = (CountingAdd)model.add(new CountingAdd());
+            model.add(new NodeConnection(constants[i],0,adds[i],0));
+        }
+        model.update();
+        for(CountingAdd a : adds) assertEquals(1,a.count);
+
+        // nothing changed, nothing runs.
+        model.update();
+        for(CountingAdd a : adds) assertEquals(1,a.count);
+
+        // change one input, only the nodes downstream of it run.
+        constants[3].getVariable(0).setValue(30);
+        model.update();
+        for(int i=0;i<10;++i) assertEquals(i==3 ? 2 : 1,adds[i].count);
+        assertEquals(30.0,adds[3].getVariable(2).getValue());
+    }
+
+    @Test
+    public void testConnectionIndex() {
+        Node constant0 = model.add(new LoadNumber(1));
+        Node constant1 = model.add(new LoadNumber(2));
+        Node add = model.add(new Add());
+        Node report = model.add(new PrintToStdOut());
+        NodeConnection c0 = model.add(new NodeConnection(constant0,0,add,0));
+        NodeConnection c1 = model.add(new NodeConnection(constant1,0,add,1));
+        NodeConnection c2 = model.add(new NodeConnection(add,2,report,0));
+
+        assertSame(c1,model.getMatchingConnection(new NodeConnection(constant1,0,add,1)));
+        assertNull(model.getMatchingConnection(new NodeConnection(constant1,0,add,0)));
+        assertEquals(List.of(c2),model.getConnectionsFrom(add));
+        assertEquals(List.of(c0,c1),model.getConnectionsTo(add));
+
+        List<NodeConnection> between = model.getConnectionsBetweenTheseNodes(List.of(constant0,add,report));
+        assertEquals(2,between.size());
+        assertTrue(between.contains(c0));
+        assertTrue(between.contains(c2));
+
+        model.remove(add);
+        assertEquals(0,model.getConnections().size());
+        assertEquals(0,model.getConnectionsFrom(constant0).size());
+        assertEquals(0,model.getConnectionsTo(report).size());
+        assertNull(model.getMatchingConnection(c1));
+    }
+
+    @Test
+    public void testFindNodeWithUniqueName() {
+        Node constant = model.add(new LoadNumber(1));
+        Node add = model.add(new Add());
+        assertSame(constant,model.findNodeWithUniqueName(constant.getUniqueName()));
+        assertSame(add,model.findNodeWithUniqueID(add.getUniqueID()));
+        assertNull(model.findNodeWithUniqueName(constant.getUniqueID()+"-Add"));
+
+        // renumbering is noticed.
+        add.setUniqueID(constant.getUniqueID()+1000);
+        assertSame(add,model.findNodeWithUniqueName(add.getUniqueName()));
+
+        model.remove(add);
+        assertNull(model.findNodeWithUniqueID(add.getUniqueID()));
+    }
+
+    @Test
+    public void testPrimitiveNodeVariables() {
+        DoubleNodeVariable d = NodeVariable.newDoubleInstance("d",1.5,false,true);
+        LongNodeVariable l = NodeVariable.newLongInstance("l",0,true,false);
+        assertEquals(1.5,d.getValue());
+        assertTrue(l.acceptsValueOf(d));
+        l.setValueFrom(d);
+        assertEquals(1L,l.getLong());
+        assertTrue(l.getIsDirty());
+
+        // boxed numbers still work.
+        d.setValue(3);
+        assertEquals(3.0,d.getDouble());
+        assertEquals(3.0,d.getValue());
+        assertFalse(d.acceptsValueOf(NodeVariable.newInstance("s",String.class,"x",false,true)));
+
+        BooleanNodeVariable b = NodeVariable.newBooleanInstance("b",false,false,false);
+        b.setValue(true);
+        assertTrue(b.getBoolean());
+
+        DoubleNodeVariable d2 = NodeVariable.newDoubleInstance("d",0,false,true);
+        JSONHelper.deserializeNodeVariable(d2,JSONHelper.serializeNodeVariable(d));
+        assertEquals(d.getDouble(),d2.getDouble());
+    }
+
+    private NodeGraph buildPureGraph() {
+        NodeGraph g = new NodeGraph();
+        Node x = g.add(new LoadNumber(3));
+        Node y = g.add(new LoadNumber(4));
+        Node add = g.add(new Add());
+        Node mul = g.add(new Multiply(0,2));
+        Node sin = g.add(new Sin());
+        Node div = g.add(new Divide());
+        Node atan = g.add(new ATan2());
+        g.add(new NodeConnection(x,0,add,0));
+        g.add(new NodeConnection(y,0,add,1));
+        g.add(new NodeConnection(add,2,mul,0));
+        g.add(new NodeConnection(mul,2,sin,0));
+        g.add(new NodeConnection(sin,1,div,0));
+        g.add(new NodeConnection(add,2,atan,0));
+        g.add(new NodeConnection(div,2,atan,1));
+        return g;
+    }
+
+    @Test
+    public void testCompiledGraphMatchesInterpreter() {
+        NodeGraph interpreted = buildPureGraph();
+        NodeGraph compiled = buildPureGraph();
+        compiled.setCompilePureNodes(true);
+        assertFalse(interpreted.isCompiled());
+        assertTrue(compiled.isCompiled());
+
+        for(int pass=0;pass<2;++pass) {
+            interpreted.update();
+            compiled.update();
+            for(int i=0;i<interpreted.getNodes().size();++i) {
+                Node a = interpreted.getNodes().get(i);
+                Node b = compiled.getNodes().get(i);
+                for(int j=0;j<a.getNumVariables();++j) {
+                    assertEquals(a.getVariable(j).getValue(),b.getVariable(j).getValue());
+                    assertFalse(b.getVariable(j).getIsDirty());
+                }
+            }
+            // change a source and go again.
+            interpreted.getNodes().get(0).getVariable(0).setValue(-5);
+            compiled.getNodes().get(0).getVariable(0).setValue(-5);
+        }
+        assertEquals(Math.atan2(-1,0),compiled.getNodes().get(6).getVariable(2).getValue());
+
+        // anything impure falls back to the interpreter.
+        compiled.add(new PrintToStdOut());
+        assertFalse(compiled.isCompiled());
+    }
+
+    /**
+     * A {@link PureNode} with no inputs and an output that is not a number.
+     */
+    private static class Greeting extends Node implements PureNode {
+        Greeting() {
+            super("Greeting");
+            addVariable(NodeVariable.newInstance("value",String.class,"hello",false,true));
+        }
+
+        @Override
+        public Node create() {
+            return new Greeting();
+        }
+
+        @Override
+        public void update() {
+            cleanAllInputs();
+        }
+    }
+
+    @Test
+    public void testNonNumericSourcesAreNotCompiled() {
+        NodeGraph g = buildPureGraph();
+        g.add(new Greeting());
+        g.setCompilePureNodes(true);
+        assertFalse(g.isCompiled());
+        g.update();
+        assertEquals("hello",g.getNodes().get(g.getNodes().size()-1).getVariable(0).getValue());
+    }
+
+    /**
+     * A {@link PureNode} with no inputs that computes its output in {@link #update()}.
+     */
+    private static class Tau extends Node implements PureNode {
+        private final DoubleNodeVariable v = NodeVariable.newDoubleInstance("value",0,false,true);
+
+        Tau() {
+            super("Tau");
+            addVariable(v);
+        }
+
+        @Override
+        public Node create() {
+            return new Tau();
+        }
+
+        @Override
+        public void update() {
+            v.setDouble(Math.PI*2);
+            cleanAllInputs();
+        }
+    }
+
+    @Test
+    public void testComputedSourcesAreNotCompiled() {
+        NodeGraph [] graphs = new NodeGraph[2];
+        for(int i=0;i<2;++i) {
+            NodeGraph g = new NodeGraph();
+            Node tau = g.add(new Tau());
+            Node add = g.add(new Add());
+            g.add(new NodeConnection(tau,0,add,0));
+            g.add(new NodeConnection(tau,0,add,1));
+            g.setCompilePureNodes(i==1);
+            g.update();
+            graphs[i] = g;
+        }
+        assertFalse(graphs[1].isCompiled());
+        assertEquals(Math.PI*4,graphs[0].getNodes().get(1).getVariable(2).getValue());
+        assertEquals(graphs[0].getNodes().get(1).getVariable(2).getValue(),
+                graphs[1].getNodes().get(1).getVariable(2).getValue());
+    }
+
+    @Test
+    public void testMemoizedPureNodesSkipRepeatedInputs() {
+        MemoCache cache = MemoCache.forClass(Multiply.class);
+        cache.clear();
+        NodeGraph g = new NodeGraph();
+        g.setMemoizePureNodes(true);
+        Node x = g.add(new LoadNumber(2));
+        Node m = g.add(new Multiply());
+        Node m2 = g.add(new Multiply());
+        g.add(new NodeConnection(x,0,m,0));
+        g.add(new NodeConnection(x,0,m,1));
+        g.add(new NodeConnection(x,0,m2,0));
+        g.add(new NodeConnection(x,0,m2,1));
+
+        g.update();
+        assertEquals(4.0,m.getVariable(2).getValue());
+        assertEquals(4.0,m2.getVariable(2).getValue());
+        assertEquals(1,cache.getMissCount());
+        assertEquals(1,cache.getHitCount());
+
+        x.getVariable(0).setValue(3.0);
+        g.update();
+        x.getVariable(0).setValue(2.0);
+        g.update();
+        assertEquals(4.0,m.getVariable(2).getValue());
+        assertFalse(m.isDirty());
+        assertEquals(2,cache.getMissCount());
+        assertEquals(4,cache.getHitCount());
+
+        cache.setCapacity(1);
+        assertEquals(1,cache.size());
+        assertEquals(1,cache.getEvictionCount());
+        cache.setCapacity(MemoCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return a graph that doubles the value of a {@link LoadNumber} and sends it to the input of a {@link Subgraph},
+     * so that a {@link Subgraph} of this graph has one input and one output.
+     */
+    private NodeGraph buildDoublingGraph() {
+        NodeGraph leaf = new NodeGraph();
+        leaf.add(new LoadNumber(0));
+
+        NodeGraph inner = new NodeGraph();
+        Node x = inner.add(new LoadNumber(0));
+        Node add = inner.add(new Add());
+        Node out = inner.add(new Subgraph(leaf));
+        inner.add(new NodeConnection(x,0,add,0));
+        inner.add(new NodeConnection(x,0,add,1));
+        inner.add(new NodeConnection(add,2,out,0));
+        return inner;
+    }
+
+    @Test
+    public void testIdenticalSubgraphsShareCachedResults() {
+        SubgraphCache cache = new SubgraphCache(16);
+        NodeGraph inner = buildDoublingGraph();
+        NodeGraph g = new NodeGraph();
+        Node in = g.add(new LoadNumber(3));
+        Subgraph s1 = (Subgraph)g.add(new Subgraph(inner));
+        Subgraph s2 = (Subgraph)g.add(new Subgraph(inner));
+        assertNull(s1.getResultCache());
+        s1.setResultCache(cache);
+        s2.setResultCache(cache);
+        g.add(new NodeConnection(in,0,s1,0));
+        g.add(new NodeConnection(in,0,s2,0));
+
+        g.update();
+        assertEquals(6.0,s1.getVariable(1).getValue());
+        assertEquals(6.0,s2.getVariable(1).getValue());
+        assertEquals(1,cache.getMissCount());
+        assertEquals(1,cache.getHitCount());
+
+        in.getVariable(0).setValue(4.0);
+        g.update();
+        in.getVariable(0).setValue(3.0);
+        g.update();
+        assertEquals(6.0,s2.getVariable(1).getValue());
+        assertEquals(2,cache.getMissCount());
+        assertEquals(4,cache.getHitCount());
+
+        // x+1 is a different result.
+        NodeGraph changed = s2.getGraph();
+        Node add = changed.getNodes().get(1);
+        for(NodeConnection c : new ArrayList<>(changed.getConnectionsTo(add))) {
+            if(c.getOutVariableIndex()==1) changed.remove(c);
+        }
+        add.getVariable(1).setValue(1.0);
+        in.getVariable(0).setValue(3.0);
+        g.update();
+        assertEquals(4.0,s2.getVariable(1).getValue());
+        assertEquals(3,cache.getMissCount());
+    }
+
+    @Test
+    public void testCachedResultsLeaveTheInnerGraphIdle() {
+        SubgraphCache cache = new SubgraphCache(16);
+        NodeGraph g = new NodeGraph();
+        Node in = g.add(new LoadNumber(3));
+        Subgraph s = (Subgraph)g.add(new Subgraph(buildDoublingGraph()));
+        s.setResultCache(cache);
+        g.add(new NodeConnection(in,0,s,0));
+        NodeGraph inner = s.getGraph();
+        g.update();
+        in.getVariable(0).setValue(4.0);
+        g.update();
+        in.getVariable(0).setValue(3.0);
+        g.update();
+        assertEquals(6.0,s.getVariable(1).getValue());
+        assertEquals(1,cache.getHitCount());
+
+        // the served inputs are not looked up again.
+        assertFalse(inner.hasPendingWork());
+        s.update();
+        assertEquals(1,cache.getHitCount());
+
+        // the next miss runs the inner graph again.
+        in.getVariable(0).setValue(5.0);
+        g.update();
+        assertEquals(10.0,s.getVariable(1).getValue());
+        assertEquals(3,cache.getMissCount());
+    }
+
+    @Test
+    public void testSubgraphsShareOneDefinition() {
+        SubgraphCache cache = new SubgraphCache(16);
+        SubgraphDefinition definition = SubgraphDefinition.of(buildDoublingGraph());
+        NodeGraph g = new NodeGraph();
+        Node in = g.add(new LoadNumber(3));
+        List<Subgraph> list = new ArrayList<>();
+        for(int i=0;i<500;++i) {
+            Subgraph s = (Subgraph)g.add(new Subgraph(definition));
+            s.setResultCache(cache);
+            g.add(new NodeConnection(in,0,s,0));
+            list.add(s);
+        }
+        Subgraph copy = (Subgraph)GraphCopier.copy(list.get(0));
+        assertSame(definition,copy.getDefinition());
+        assertSame(cache,copy.getResultCache());
+
+        g.update();
+        for(Subgraph s : list) assertEquals(6.0,s.getVariable(1).getValue());
+        assertEquals(1,cache.getMissCount());
+        assertEquals(499,cache.getHitCount());
+        // the one that ran used the inner graph of the definition.
+        assertEquals(0,list.stream().filter(Subgraph::hasInnerGraph).count());
+
+        // looking at the inner graph does not change the Subgraph.
+        Subgraph first = list.get(1);
+        NodeGraph look = first.copyGraph();
+        assertEquals(definition.getNodeCount(),look.getNodes().size());
+        assertSame(definition,first.getDefinition());
+        assertFalse(first.hasInnerGraph());
+
+        // a Subgraph whose inner graph was changed gets a definition of its own.
+        Subgraph last = list.get(499);
+        last.getGraph().getNodes().get(0).setLabel("changed");
+        assertNotSame(definition,last.getDefinition());
+        assertEquals(definition.getNodeCount(),last.getDefinition().getNodeCount());
+    }
+
+    @Test
+    public void testSharedDefinitionsKeepEachInstanceApart() {
+        SubgraphDefinition definition = SubgraphDefinition.of(buildDoublingGraph());
+        NodeGraph g = new NodeGraph();
+        List<Node> sources = new ArrayList<>();
+        List<Subgraph> list = new ArrayList<>();
+        for(int i=0;i<3;++i) {
+            Node in = g.add(new LoadNumber(i+1));
+            Subgraph s = (Subgraph)g.add(new Subgraph(definition));
+            g.add(new NodeConnection(in,0,s,0));
+            sources.add(in);
+            list.add(s);
+        }
+        g.update();
+        for(int i=0;i<3;++i) assertEquals(2.0*(i+1),list.get(i).getVariable(1).getValue());
+
+        sources.get(0).getVariable(0).setValue(7.0);
+        g.update();
+        assertEquals(14.0,list.get(0).getVariable(1).getValue());
+        assertEquals(4.0,list.get(1).getVariable(1).getValue());
+        assertEquals(0,list.stream().filter(Subgraph::hasInnerGraph).count());
+
+        // a Node that is not pure needs an inner graph of its own.
+        NodeGraph impure = new NodeGraph();
+        impure.add(new LoadString("x"));
+        Subgraph s = (Subgraph)g.add(new Subgraph(impure));
+        g.update();
+        assertTrue(s.hasInnerGraph());
+    }
+
+    @Test
+    public void testSubgraphListsInputsFirst() {
+        NodeGraph leaf = new NodeGraph();
+        leaf.add(new LoadNumber(0));
+        NodeGraph inner = new NodeGraph();
+        // both exposed variables are called "value".
+        inner.add(new Subgraph(leaf));
+        inner.add(new LoadNumber(0));
+
+        Subgraph s = new Subgraph(inner);
+        assertTrue(s.getVariable(0).getHasInput());
+        assertTrue(s.getVariable(1).getHasOutput());
+    }
+
+    @Test
+    public void testIdleNestedSubgraphsDoNotRun() {
+        // each level passes its input down to the level inside it.
+        NodeGraph level = new NodeGraph();
+        level.add(new LoadNumber(0));
+        for(int i=0;i<10;++i) {
+            Subgraph inside = new Subgraph(level);
+            inside.setResultCache(null);
+            level = new NodeGraph();
+            Node x = level.add(new LoadNumber(0));
+            level.add(inside);
+            level.add(new NodeConnection(x,0,inside,0));
+        }
+        Subgraph top = new Subgraph(level);
+        top.setResultCache(null);
+        NodeGraph g = new NodeGraph();
+        Node in = g.add(new LoadNumber(5));
+        g.add(top);
+        g.add(new NodeConnection(in,0,top,0));
+        g.update();
+
+        Subgraph bottom = top;
+        for(int i=0;i<10;++i) bottom = (Subgraph)bottom.getGraph().getNodes().get(1);
+        NodeGraph deepest = bottom.getGraph();
+        assertEquals(5.0,deepest.getNodes().get(0).getVariable(0).getValue());
+        deepest.setMetricsEnabled(true);
+
+        // the same value again does not reach the bottom.
+        in.getVariable(0).setValue(5.0);
+        g.update();
+        assertTrue(deepest.getMetrics().getAll().isEmpty());
+        assertFalse(top.getGraph().hasPendingWork());
+
+        in.getVariable(0).setValue(6.0);
+        g.update();
+        assertEquals(6.0,deepest.getNodes().get(0).getVariable(0).getValue());
+    }
+
+    @Test
+    public void testBatchEvaluationMatchesUpdate() {
+        NodeGraph g = buildPureGraph();
+        Node x = g.getNodes().get(0);
+        Node atan = g.getNodes().get(6);
+        int rows = 3000;
+        double [] xs = new double[rows];
+        for(int i=0;i<rows;++i) xs[i] = i*0.01-10;
+
+        BatchEvaluator batch = new BatchEvaluator(g);
+        batch.bind(x,xs);
+        double [][] result = batch.evaluate(atan.getVariable(2),x.getVariable(0));
+        assertArrayEquals(xs,result[1]);
+
+        for(int i=0;i<rows;i+=97) {
+            x.getVariable(0).setValue(xs[i]);
+            g.update();
+            assertEquals(atan.getVariable(2).getValue(),result[0][i]);
+        }
+
+        assertThrows(IllegalArgumentException.class,()->batch.bind(g.getNodes().get(2),xs));
+        batch.unbindAll();
+        assertThrows(IllegalStateException.class,batch::evaluate);
+    }
+
+    /**
+     * An {@link AsyncNode} that doubles its input on another thread once it is released.
+     */
+    private static class SlowDouble extends Node implements AsyncNode {
+        private final DoubleNodeVariable a = NodeVariable.newDoubleInstance("A",0,true,false);
+        private final DoubleNodeVariable b = NodeVariable.newDoubleInstance("output",0,false,true);
+        public final CompletableFuture<Void> release = new CompletableFuture<>();
+
+        public SlowDouble() {
+            super("SlowDouble");
+            addVariable(a);
+            addVariable(b);
+        }
+
+        @Override
+        public Node create() {
+            return new SlowDouble();
+        }
+
+        @Override
+        public void update() {
+            b.setDouble(a.getDouble()*2);
+            cleanAllInputs();
+        }
+
+        @Override
+        public CompletableFuture<Runnable> updateAsync(Executor executor) {
+            double v = a.getDouble();
+            cleanAllInputs();
+            return release.thenApplyAsync((x)->()->b.setDouble(v*2),executor);
+        }
+    }
+
+    @Test
+    public void testAsyncNodeDoesNotBlockUpdate() {
+        NodeGraph graph = new NodeGraph();
+        Node constant = graph.add(new LoadNumber(5));
+        SlowDouble slow = (SlowDouble)graph.add(new SlowDouble());
+        Node add = graph.add(new Add(0,1));
+        Node other = graph.add(new Add(2,3));
+        graph.add(new NodeConnection(constant,0,slow,0));
+        graph.add(new NodeConnection(slow,1,add,0));
+        AtomicInteger calls = new AtomicInteger();
+        assertNull(graph.getAsyncListener());
+        graph.setAsyncListener(calls::incrementAndGet);
+
+        graph.update();
+        assertTrue(graph.hasAsyncWork());
+        assertEquals(5.0,other.getVariable(2).getValue());
+        assertEquals(1.0,add.getVariable(2).getValue());
+
+        slow.release.complete(null);
+        graph.whenAsyncWorkDone().join();
+        assertEquals(1,calls.get());
+        graph.update();
+        assertFalse(graph.hasAsyncWork());
+        assertEquals(11.0,add.getVariable(2).getValue());
+        assertFalse(slow.getVariable(1).getIsDirty());
+    }
+
+    @Test
+    public void testMetricsCountUpdatesAndTransfers() {
+        Node constant = model.add(new LoadNumber(1));
+        CountingAdd add = (CountingAdd)model.add(new CountingAdd());
+        NodeConnection c = model.add(new NodeConnection(constant,0,add,0));
+
+        model.update();
+        assertNull(model.getMetrics().get(add));
+        assertEquals(0,model.getMetrics().getTransferCount(c));
+
+        model.setMetricsEnabled(true);
+        constant.getVariable(0).setValue(2);
+        model.update();
+        // nothing changed, nothing is counted.
+        model.update();
+        constant.getVariable(0).setValue(3);
+        model.update();
+
+        NodeMetrics m = model.getMetrics().get(add);
+        assertNotNull(m);
+        assertEquals(2,m.getUpdateCount());
+        assertTrue(m.getMaxNanos() <= m.getTotalNanos());
+        assertNotEquals(0,m.getLastUpdateTime());
+        assertEquals(2,model.getMetrics().getTransferCount(c));
+
+        model.setMetricsEnabled(false);
+        constant.getVariable(0).setValue(4);
+        model.update();
+        assertEquals(2,model.getMetrics().get(add).getUpdateCount());
+        assertEquals(4.0,add.getVariable(2).getValue());
+
+        model.getMetrics().reset();
+        assertNull(model.getMetrics().get(add));
+        assertEquals(0,model.getMetrics().getTransferCount(c));
+    }
+
+    @Test
+    public void testMetricsCountCompiledRuns() {
+        NodeGraph g = buildPureGraph();
+        g.setCompilePureNodes(true);
+        g.setMetricsEnabled(true);
+        assertTrue(g.isCompiled());
+
+        g.update();
+        // nothing changed, nothing is counted.
+        g.update();
+        for(Node n : g.getNodes()) {
+            NodeMetrics m = g.getMetrics().get(n);
+            assertNotNull(m);
+            assertEquals(1,m.getUpdateCount());
+        }
+        for(NodeConnection c : g.getConnections()) assertEquals(1,g.getMetrics().getTransferCount(c));
+
+        g.getNodes().get(0).getVariable(0).setValue(2.0);
+        g.update();
+        assertEquals(2,g.getMetrics().get(g.getNodes().get(1)).getUpdateCount());
+    }
+
+    @Test
+    public void testLoopsAreFoundAndSplit() {
+        Node a = model.add(new Add());
+        Node b = model.add(new Add());
+        Node c = model.add(new Add());
+        model.add(new NodeConnection(a,2,b,0));
+        NodeConnection bc = model.add(new NodeConnection(b,2,c,0));
+        assertTrue(model.getLoops().isEmpty());
+        assertTrue(model.wouldCreateLoop(c,a));
+        assertFalse(model.wouldCreateLoop(a,c));
+
+        NodeConnection ca = model.add(new NodeConnection(c,2,a,0));
+        assertEquals(Set.of(a,b,c),model.getLoop(b));
+        assertEquals(1,model.getLoops().size());
+
+        NodeConnection cc = model.add(new NodeConnection(c,2,c,1));
+        model.remove(bc);
+        assertTrue(model.getLoop(a).isEmpty());
+        assertEquals(Set.of(c),model.getLoop(c));
+
+        model.remove(cc);
+        model.remove(ca);
+        assertTrue(model.getLoops().isEmpty());
+    }
+
+    @Test
+    public void testFeedbackLoopRunsUntilSettled() {
+        // max(5,max(5,...)) settles after two passes.
+        Node constant = model.add(new LoadNumber(5));
+        Node max = model.add(new Max());
+        CountingAdd after = (CountingAdd)model.add(new CountingAdd());
+        model.add(new NodeConnection(constant,0,max,0));
+        model.add(new NodeConnection(max,2,max,1));
+        model.add(new NodeConnection(max,2,after,0));
+
+        model.update();
+        assertEquals(5.0,max.getVariable(2).getValue());
+        assertEquals(5.0,after.getVariable(2).getValue());
+        assertEquals(1,after.count);
+
+        model.update();
+        assertEquals(1,after.count);
+    }
+
+    @Test
+    public void testFeedbackLoopStopsAtLimit() {
+        NodeGraph graph = new NodeGraph();
+        // a counter never settles.
+        Node constant = graph.add(new LoadNumber(1));
+        CountingAdd counter = (CountingAdd)graph.add(new CountingAdd());
+        graph.add(new NodeConnection(constant,0,counter,0));
+        graph.add(new NodeConnection(counter,2,counter,1));
+        graph.setMaxLoopIterations(10);
+
+        graph.update();
+        assertEquals(10,counter.count);
+        assertEquals(10.0,counter.getVariable(2).getValue());
+
+        // the loop waits for something upstream to change.
+        graph.update();
+        assertEquals(10,counter.count);
+
+        constant.getVariable(0).setValue(2);
+        graph.update();
+        assertEquals(20,counter.count);
+        assertEquals(30.0,counter.getVariable(2).getValue());
+    }
+
+    @Test
+    public void testFlightRecorderSettingsLoad() throws Exception {
+        Map<String,String> settings = NodeGraphFlightRecorder.getConfiguration().getSettings();
+        for(String name : List.of(GraphUpdateEvent.NAME,NodeUpdateEvent.NAME,ConnectionTransferEvent.NAME,
+                DeepCopyEvent.NAME,GraphSaveEvent.NAME,GraphLoadEvent.NAME)) {
+            assertEquals("true",settings.get(name+"#enabled"),name);
+            assertNotNull(settings.get(name+"#threshold"),name);
+        }
+    }
+
     @Test
     public void testFactoryFailsOnBadRequests() {
         assertThrows(IllegalArgumentException.class, ()->{
@@ -94,6 +915,30 @@ public class TestNodeGraphCore {
         }
     }
 
+    @Test
+    public void testFactoryMakesNodesOnlyWhenAskedFromAnyThread() {
+        AtomicInteger made = new AtomicInteger();
+        NodeFactory.registerNode("TestLazyAdd",()->{
+            made.incrementAndGet();
+            return new Add();
+        });
+        try {
+            assertTrue(List.of(NodeFactory.getNames()).contains("TestLazyAdd"));
+            assertEquals(0,made.get());
+
+            // every name is the name of the node it makes.
+            List.of(NodeFactory.getNames()).parallelStream().forEach((s)->{
+                if(!s.equals("TestLazyAdd")) assertEquals(s,NodeFactory.createNode(s).getName());
+            });
+            IntStream.range(0,1000).parallel().forEach((i)->assertNotNull(NodeFactory.createNode("TestLazyAdd")));
+            assertEquals(1000,made.get());
+        } finally {
+            // other tests walk every registered name.
+            NodeFactory.unregisterNode("TestLazyAdd");
+        }
+        assertFalse(List.of(NodeFactory.getNames()).contains("TestLazyAdd"));
+    }
+
     @Test
     public void testNodesAreNotEqual() {
         Node nodeA = new Add();
@@ -126,6 +971,252 @@ public class TestNodeGraphCore {
         assertEquals(model.toString(),modelB.toString());
     }
 
+    @Test
+    public void testModelSaveAndLoadStreams() throws IOException {
+        testAddTwoConstants();
+        StringWriter writer = new StringWriter();
+        JSONHelper.saveGraph(model,writer);
+        assertEquals(JSONHelper.getDefaultGson().toJson(model),writer.toString());
+        assertFalse(writer.toString().contains("\n"));
+
+        NodeGraph modelB = JSONHelper.loadGraph(new StringReader(writer.toString()));
+        assertEquals(model.toString(),modelB.toString());
+
+        // indented for people, same graph.
+        StringWriter pretty = new StringWriter();
+        JSONHelper.saveGraph(model,pretty,true);
+        assertTrue(pretty.toString().contains("\n  "));
+        assertEquals(writer.toString(),JSONHelper.getDefaultGson().toJson(JSONHelper.loadGraph(new StringReader(pretty.toString()))));
+
+        // fields out of order still load.
+        Node add = model.getNodes().get(2);
+        String json = "{\"connections\":[{\"outVariableIndex\":1,\"outNode\":\""+add.getUniqueName()+"\"," +
+                "\"inVariableIndex\":0,\"inNode\":\""+model.getNodes().get(0).getUniqueName()+"\"}]," +
+                "\"nodes\":[" + JSONHelper.getDefaultGson().toJson(model.getNodes().get(0)) + "," +
+                "{\"variables\":[{\"name\":\"A\",\"value\":5.0,\"hasInput\":true,\"hasOutput\":false," +
+                "\"bounds\":{\"x\":0,\"y\":0,\"width\":150,\"height\":20},\"isDirty\":true}]," +
+                "\"uniqueID\":"+add.getUniqueID()+",\"name\":\"Add\"}]}";
+        NodeGraph modelC = JSONHelper.loadGraph(new StringReader(json));
+        assertEquals(2,modelC.getNodes().size());
+        assertEquals(1,modelC.getConnections().size());
+        assertEquals(5.0,modelC.getNodes().get(1).getVariable(0).getValue());
+    }
+
+    @Test
+    public void testBinaryMatchesJSON() throws IOException {
+        for(String s : NodeFactory.getNames()) {
+            model.add(NodeFactory.createNode(s)).setLabel(s);
+        }
+        testAddTwoConstants();
+        String json = JSONHelper.getDefaultGson().toJson(model);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryHelper.saveGraph(model,out);
+        assertTrue(out.size() < json.length()/4);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertTrue(BinaryHelper.isBinaryGraph(in));
+        NodeGraph modelB = BinaryHelper.loadGraph(in);
+        assertEquals(json,JSONHelper.getDefaultGson().toJson(modelB));
+    }
+
+    @Test
+    public void testDeepCopyMatchesJSON() {
+        for(String s : NodeFactory.getNames()) {
+            model.add(NodeFactory.createNode(s)).setLabel(s);
+        }
+        testAddTwoConstants();
+        Rectangle payload = new Rectangle(1,2,3,4);
+        Node p = model.add(new PrintToStdOut(payload));
+
+        NodeGraph modelB = model.deepCopy();
+        assertEquals(JSONHelper.getDefaultGson().toJson(model),JSONHelper.getDefaultGson().toJson(modelB));
+        assertEquals(JSONHelper.getDefaultGson().toJson(model),JSONHelper.getDefaultGson().toJson(JSONHelper.deepCopy(model)));
+        assertEquals(JSONHelper.getDefaultGson().toJson(p),JSONHelper.getDefaultGson().toJson(JSONHelper.deepCopy(p)));
+        assertEquals(model.getNodes().size(),modelB.getNodes().size());
+        for(int i=0;i<model.getNodes().size();++i) {
+            assertNotSame(model.getNodes().get(i),modelB.getNodes().get(i));
+        }
+        for(NodeConnection c : modelB.getConnections()) {
+            assertTrue(modelB.getNodes().contains(c.getInNode()));
+            assertTrue(modelB.getNodes().contains(c.getOutNode()));
+        }
+
+        // mutable values are not shared.
+        Object payloadB = modelB.getNodes().get(model.getNodes().indexOf(p)).getVariable(0).getValue();
+        assertEquals(payload,payloadB);
+        assertNotSame(payload,payloadB);
+
+        BufferedImage image = new BufferedImage(2,2,BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(1,1,0xFF123456);
+        BufferedImage imageB = (BufferedImage)GraphCopier.copyValue(image);
+        assertNotSame(image,imageB);
+        assertEquals(0xFF123456,imageB.getRGB(1,1));
+        image.setRGB(1,1,0);
+        assertEquals(0xFF123456,imageB.getRGB(1,1));
+    }
+
+    @Test
+    public void testSnapshotsShareWhatDidNotChange() {
+        testAddTwoConstants();
+        Node constant0 = model.getNodes().get(0);
+        Node add = model.getNodes().get(2);
+
+        GraphSnapshot s1 = model.snapshot();
+        assertSame(s1,model.snapshot());
+        assertEquals(3,s1.getNodeCount());
+        assertEquals(2,s1.getConnectionCount());
+
+        constant0.getVariable(0).setValue(5.0);
+        model.update();
+        GraphSnapshot s2 = model.snapshot();
+        assertNotSame(s1,s2);
+        List<NodeSnapshot> n1 = s1.getNodes();
+        List<NodeSnapshot> n2 = s2.getNodes();
+        assertNotSame(n1.get(0),n2.get(0));
+        assertSame(n1.get(1),n2.get(1));
+        assertEquals(3.0,n1.get(2).getVariableValue(2));
+        assertEquals(7.0,n2.get(2).getVariableValue(2));
+
+        model.remove(add);
+        GraphSnapshot s3 = model.snapshot();
+        assertEquals(2,s3.getNodeCount());
+        assertEquals(0,s3.getConnectionCount());
+
+        // old versions are untouched and can be restored.
+        NodeGraph restored = s1.toGraph();
+        assertEquals(3,restored.getNodes().size());
+        assertEquals(2,restored.getConnections().size());
+        assertEquals(add.getUniqueID(),restored.getNodes().get(2).getUniqueID());
+        restored.update();
+        assertEquals(3.0,restored.getNodes().get(2).getVariable(2).getValue());
+    }
+
+    @Test
+    public void testConcurrentGraphCanBeReadWhileItChanges() throws InterruptedException {
+        NodeGraph graph = new NodeGraph();
+        graph.setConcurrent(true);
+        Node constant = graph.add(new LoadNumber(1));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread worker = new Thread(()->{
+            try {
+                for(int i=0;i<2000;++i) {
+                    Node a = graph.add(new Add());
+                    graph.add(new NodeConnection(constant,0,a,0));
+                    graph.update();
+                    if(i%2==0) graph.remove(a);
+                }
+            } catch(Throwable t) {
+                failure.set(t);
+            }
+        });
+        worker.start();
+        while(worker.isAlive()) {
+            for(Node n : graph.getNodes()) assertNotNull(n.getRectangle());
+            for(NodeConnection c : graph.getConnections()) assertSame(constant,c.getInNode());
+            assertTrue(graph.getConnectionsFrom(constant).size() <= graph.getNodes().size());
+            graph.getBounds();
+        }
+        worker.join();
+        assertNull(failure.get());
+
+        assertEquals(1001,graph.getNodes().size());
+        assertEquals(1000,graph.getConnections().size());
+        assertThrows(UnsupportedOperationException.class,()->graph.getNodes().add(constant));
+    }
+
+    @Test
+    public void testNodeBelongsToOneGraph() {
+        Node add = model.add(new Add());
+        NodeGraph other = new NodeGraph();
+        assertThrows(IllegalArgumentException.class,()->other.add(add));
+        assertSame(model,add.getParentGraph());
+
+        // once removed it can move.
+        model.remove(add);
+        other.add(add);
+        assertSame(other,add.getParentGraph());
+        add.getVariable(0).setValue(2);
+        other.update();
+        assertEquals(2.0,add.getVariable(2).getValue());
+    }
+
+    @Test
+    public void testUniqueIDsArePerGraphAndAtomic() {
+        NodeGraph a = new NodeGraph();
+        NodeGraph b = new NodeGraph();
+        assertEquals(1,a.add(new Add()).getUniqueID());
+        assertEquals(1,b.add(new Add()).getUniqueID());
+
+        // an ID from somewhere else is never handed out again.
+        Node loaded = new Add();
+        loaded.setUniqueID(100);
+        a.add(loaded);
+        assertEquals(101,a.add(new Add()).getUniqueID());
+
+        // only the incoming nodes are renumbered.
+        a.add(b);
+        assertEquals(List.of(1L,100L,101L,102L),a.getNodes().stream().map(Node::getUniqueID).collect(Collectors.toList()));
+
+        UniqueIDAllocator ids = a.getUniqueIDAllocator();
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        IntStream.range(0,100_000).parallel().forEach((i)->assertTrue(seen.add(ids.next())));
+        assertEquals(100_000,seen.size());
+        assertFalse(seen.contains(1L) || seen.contains(102L));
+
+        a.clear();
+        assertEquals(1,a.add(new Add()).getUniqueID());
+    }
+
+    @Test
+    public void testNodesOutsideAGraphHaveProvisionalIDs() {
+        Node a = new Add();
+        Node b = new Add();
+        assertTrue(a.getUniqueID()<0);
+        assertTrue(b.getUniqueID()<0);
+        assertNotEquals(a.getUniqueName(),b.getUniqueName());
+
+        // the graph replaces a provisional ID with one of its own.
+        NodeGraph graph = new NodeGraph();
+        assertEquals(1,graph.add(a).getUniqueID());
+        assertEquals(2,graph.add(b).getUniqueID());
+    }
+
+    @Test
+    public void testLazyGraphFileLoadsWhatIsTouched() throws IOException {
+        Node previous = model.add(new LoadNumber(1));
+        for(int i=1;i<50;++i) {
+            Node n = model.add(new Add(0,1));
+            n.setPosition(new Point(i*200,0));
+            model.add(new NodeConnection(previous,(i==1)?0:2,n,0));
+            previous = n;
+        }
+        String json = JSONHelper.getDefaultGson().toJson(model);
+
+        File file = File.createTempFile("lazy",".ngb");
+        file.deleteOnExit();
+        try(OutputStream out = new FileOutputStream(file)) {
+            BinaryHelper.saveGraph(model,out);
+        }
+
+        NodeGraph modelB = new NodeGraph();
+        try(LazyGraphFile lazy = LazyGraphFile.open(file,modelB)) {
+            assertEquals(50,lazy.getNodeCount());
+            assertEquals(0,modelB.getNodes().size());
+
+            // one node and its two neighbors.
+            lazy.loadArea(new Rectangle(10*200+10,10,10,10));
+            assertEquals(3,lazy.getLoadedCount());
+            assertEquals(2,modelB.getConnections().size());
+
+            lazy.loadAll();
+            assertTrue(lazy.isFullyLoaded());
+        }
+        modelB.getNodes().sort((a,b)->Long.compare(a.getUniqueID(),b.getUniqueID()));
+        modelB.getConnections().sort((a,b)->Long.compare(a.getOutNode().getUniqueID(),b.getOutNode().getUniqueID()));
+        assertEquals(json,JSONHelper.getDefaultGson().toJson(modelB));
+    }
+
     @Test
     public void testModelClears() {
         testAddTwoConstants();